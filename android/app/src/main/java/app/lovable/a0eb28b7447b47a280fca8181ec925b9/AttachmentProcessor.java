@@ -0,0 +1,157 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Downscales captured photos before they are queued for upload.
+ *
+ * The source is first decoded with a power-of-two {@code inSampleSize}, so a
+ * 12 MP camera image never has to fit in memory at full resolution, then
+ * scaled to the exact target size, rotated upright and re-encoded as JPEG.
+ */
+final class AttachmentProcessor {
+
+    static final int DEFAULT_MAX_DIMENSION = 1600;
+    static final int DEFAULT_QUALITY = 80;
+    static final String MIME_TYPE = "image/jpeg";
+    static final String EXTENSION = "jpg";
+
+    static final class Result {
+        final long bytes;
+        final int width;
+        final int height;
+
+        Result(long bytes, int width, int height) {
+            this.bytes = bytes;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private AttachmentProcessor() {
+    }
+
+    /** Largest power of two that keeps both decoded sides at or above the target. */
+    static int sampleSize(int width, int height, int maxDimension) {
+        int sample = 1;
+        while (Math.max(width, height) / (sample * 2) >= maxDimension) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /** Target size that fits {@code maxDimension} on the longer side; never upscales. */
+    static int[] targetSize(int width, int height, int maxDimension) {
+        int longest = Math.max(width, height);
+        if (longest <= maxDimension) {
+            return new int[] { width, height };
+        }
+        double scale = (double) maxDimension / longest;
+        return new int[] {
+            Math.max(1, (int) Math.round(width * scale)),
+            Math.max(1, (int) Math.round(height * scale))
+        };
+    }
+
+    static Result process(Context context, String sourcePath, File dest, int maxDimension, int quality) throws IOException {
+        long start = System.nanoTime();
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = open(context, sourcePath)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Bild konnte nicht gelesen werden: " + sourcePath);
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, maxDimension);
+        Bitmap decoded;
+        try (InputStream in = open(context, sourcePath)) {
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Bild konnte nicht dekodiert werden: " + sourcePath);
+        }
+
+        int[] size = targetSize(decoded.getWidth(), decoded.getHeight(), maxDimension);
+        Matrix matrix = new Matrix();
+        matrix.postScale((float) size[0] / decoded.getWidth(), (float) size[1] / decoded.getHeight());
+        matrix.postRotate(rotation(context, sourcePath));
+        Bitmap scaled = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), matrix, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        int width = scaled.getWidth();
+        int height = scaled.getHeight();
+
+        try (OutputStream out = new FileOutputStream(dest)) {
+            if (!scaled.compress(Bitmap.CompressFormat.JPEG, quality, out)) {
+                throw new IOException("Bild konnte nicht gespeichert werden");
+            }
+        } catch (IOException e) {
+            dest.delete();
+            throw e;
+        } finally {
+            scaled.recycle();
+        }
+
+        Result result = new Result(dest.length(), width, height);
+        PluginMetrics.ATTACHMENT_PROCESS_US.record(PluginMetrics.micros(start));
+        PluginMetrics.ATTACHMENT_BYTES.record(result.bytes);
+        return result;
+    }
+
+    private static InputStream open(Context context, String sourcePath) throws IOException {
+        if (sourcePath.startsWith("content://") || sourcePath.startsWith("file://")) {
+            InputStream in = context.getContentResolver().openInputStream(Uri.parse(sourcePath));
+            if (in == null) {
+                throw new IOException("Quelle konnte nicht geöffnet werden: " + sourcePath);
+            }
+            return in;
+        }
+        return new FileInputStream(sourcePath);
+    }
+
+    private static int rotation(Context context, String sourcePath) {
+        try {
+            ExifInterface exif;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                try (InputStream in = open(context, sourcePath)) {
+                    exif = new ExifInterface(in);
+                }
+            } else if (!sourcePath.startsWith("content://")) {
+                exif = new ExifInterface(sourcePath.startsWith("file://") ? Uri.parse(sourcePath).getPath() : sourcePath);
+            } else {
+                return 0;
+            }
+            switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            // Missing EXIF data only means the image stays as captured
+            return 0;
+        }
+    }
+}
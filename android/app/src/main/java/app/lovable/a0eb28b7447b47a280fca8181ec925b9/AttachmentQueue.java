@@ -0,0 +1,422 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Photos and other attachments captured offline, tracked from capture through
+ * downscaling to a finished upload.
+ *
+ * Attachments are immutable and replaced with a compare-and-set on every
+ * transition (processing -> ready -> uploading -> uploaded, or failed), the
+ * same way {@link OfflineActionQueue} handles actions. The upload URL and the
+ * byte offset the server acknowledged are persisted after every chunk, so an
+ * upload interrupted by a lost connection or a killed process continues from
+ * there instead of starting over.
+ */
+class AttachmentQueue {
+
+    static final String STATE_PROCESSING = "processing";
+    static final String STATE_READY = "ready";
+    static final String STATE_UPLOADING = "uploading";
+    static final String STATE_UPLOADED = "uploaded";
+    static final String STATE_FAILED = "failed";
+
+    static final String OUTCOME_UPLOADED = "uploaded";
+    static final String OUTCOME_RETRY = "retry";
+    static final String OUTCOME_FAILED = "failed";
+    static final String OUTCOME_SKIPPED = "skipped";
+
+    static final class Attachment {
+        final long seq;
+        final String id;
+        final String ownerType;
+        final String ownerId;
+        final String sourcePath;
+        final int maxDimension;
+        final int quality;
+        final long createdAt;
+        final String state;
+        final String path;
+        final String mimeType;
+        final long bytes;
+        final int width;
+        final int height;
+        final String uploadUrl;
+        final long uploadedBytes;
+        final int attempts;
+        final String lastError;
+
+        Attachment(long seq, String id, String ownerType, String ownerId, String sourcePath, int maxDimension,
+                   int quality, long createdAt, String state, String path, String mimeType, long bytes, int width,
+                   int height, String uploadUrl, long uploadedBytes, int attempts, String lastError) {
+            this.seq = seq;
+            this.id = id;
+            this.ownerType = ownerType;
+            this.ownerId = ownerId;
+            this.sourcePath = sourcePath;
+            this.maxDimension = maxDimension;
+            this.quality = quality;
+            this.createdAt = createdAt;
+            this.state = state;
+            this.path = path;
+            this.mimeType = mimeType;
+            this.bytes = bytes;
+            this.width = width;
+            this.height = height;
+            this.uploadUrl = uploadUrl;
+            this.uploadedBytes = uploadedBytes;
+            this.attempts = attempts;
+            this.lastError = lastError;
+        }
+
+        Attachment withState(String newState, int newAttempts, String error) {
+            return new Attachment(seq, id, ownerType, ownerId, sourcePath, maxDimension, quality, createdAt, newState,
+                path, mimeType, bytes, width, height, uploadUrl, uploadedBytes, newAttempts, error);
+        }
+
+        Attachment withFile(String newPath, String newMimeType, long newBytes, int newWidth, int newHeight) {
+            return new Attachment(seq, id, ownerType, ownerId, sourcePath, maxDimension, quality, createdAt, STATE_READY,
+                newPath, newMimeType, newBytes, newWidth, newHeight, null, 0, attempts, null);
+        }
+
+        Attachment withProgress(String newUploadUrl, long newUploadedBytes) {
+            return new Attachment(seq, id, ownerType, ownerId, sourcePath, maxDimension, quality, createdAt, state,
+                path, mimeType, bytes, width, height, newUploadUrl, newUploadedBytes, attempts, lastError);
+        }
+
+        String fileName() {
+            return path == null ? null : new File(path).getName();
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("ownerType", ownerType);
+            json.put("ownerId", ownerId);
+            json.put("sourcePath", sourcePath);
+            json.put("maxDimension", maxDimension);
+            json.put("quality", quality);
+            json.put("createdAt", createdAt);
+            json.put("state", state);
+            json.put("path", path);
+            json.put("mimeType", mimeType);
+            json.put("bytes", bytes);
+            json.put("width", width);
+            json.put("height", height);
+            json.put("uploadUrl", uploadUrl);
+            json.put("uploadedBytes", uploadedBytes);
+            json.put("attempts", attempts);
+            json.put("lastError", lastError);
+            return json;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Attachment> byId = new ConcurrentHashMap<>();
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final OfflineActionQueue.Store store;
+    private final Executor writer;
+    private final int maxAttempts;
+
+    AttachmentQueue(OfflineActionQueue.Store store, Executor writer, int maxAttempts) {
+        this.store = store;
+        this.writer = writer;
+        this.maxAttempts = maxAttempts;
+        restore(store.load());
+    }
+
+    Attachment add(String ownerType, String ownerId, String sourcePath, int maxDimension, int quality, long now) {
+        long seq = nextSeq.getAndIncrement();
+        Attachment attachment = new Attachment(seq, "att_" + now + "_" + seq, ownerType, ownerId, sourcePath,
+            maxDimension, quality, now, STATE_PROCESSING, null, null, 0, 0, 0, null, 0, 0, null);
+        byId.put(attachment.id, attachment);
+        scheduleFlush();
+        return attachment;
+    }
+
+    Attachment get(String id) {
+        return byId.get(id);
+    }
+
+    /** All attachments in capture order. */
+    List<Attachment> list() {
+        List<Attachment> result = new ArrayList<>(byId.values());
+        Collections.sort(result, new Comparator<Attachment>() {
+            @Override
+            public int compare(Attachment a, Attachment b) {
+                return Long.compare(a.seq, b.seq);
+            }
+        });
+        return result;
+    }
+
+    List<Attachment> inState(String state) {
+        List<Attachment> result = new ArrayList<>();
+        for (Attachment attachment : list()) {
+            if (attachment.state.equals(state)) {
+                result.add(attachment);
+            }
+        }
+        return result;
+    }
+
+    /** Attachments that still need processing or uploading. */
+    int pendingCount() {
+        int count = 0;
+        for (Attachment attachment : byId.values()) {
+            if (!attachment.state.equals(STATE_UPLOADED) && !attachment.state.equals(STATE_FAILED)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    boolean markProcessed(String id, String path, String mimeType, long bytes, int width, int height) {
+        Attachment current = byId.get(id);
+        return current != null && current.state.equals(STATE_PROCESSING)
+            && replace(current, current.withFile(path, mimeType, bytes, width, height));
+    }
+
+    boolean markProcessingFailed(String id, String error) {
+        Attachment current = byId.get(id);
+        return current != null && current.state.equals(STATE_PROCESSING)
+            && replace(current, current.withState(STATE_FAILED, current.attempts, error));
+    }
+
+    /** Moves a failed attachment back to where it failed, with a fresh attempt budget. */
+    boolean retry(String id) {
+        Attachment current = byId.get(id);
+        if (current == null || !current.state.equals(STATE_FAILED)) {
+            return false;
+        }
+        String state = current.path == null ? STATE_PROCESSING : STATE_READY;
+        return replace(current, current.withState(state, 0, current.lastError));
+    }
+
+    Attachment remove(String id) {
+        Attachment removed = byId.remove(id);
+        if (removed != null) {
+            scheduleFlush();
+        }
+        return removed;
+    }
+
+    /** Drops uploaded attachments and returns them so their files can be deleted. */
+    List<Attachment> clearUploaded() {
+        List<Attachment> removed = new ArrayList<>();
+        for (Attachment attachment : byId.values()) {
+            // Uploaded is terminal, so the conditional remove cannot race a transition
+            if (attachment.state.equals(STATE_UPLOADED) && byId.remove(attachment.id, attachment)) {
+                removed.add(attachment);
+            }
+        }
+        if (!removed.isEmpty()) {
+            scheduleFlush();
+        }
+        return removed;
+    }
+
+    /**
+     * Uploads one ready attachment, resuming at the offset the server reports
+     * for an earlier upload URL. Only one caller can move an attachment to
+     * uploading, so concurrent sync triggers never send the same file twice.
+     *
+     * @return one of the {@code OUTCOME_*} constants
+     */
+    String upload(String id, ResumableUploader uploader, String endpoint, Map<String, String> headers,
+                  Map<String, String> metadata, final ResumableUploader.Progress progress) {
+        Attachment current = byId.get(id);
+        if (current == null || !current.state.equals(STATE_READY)) {
+            return OUTCOME_SKIPPED;
+        }
+        Attachment started = current.withState(STATE_UPLOADING, current.attempts + 1, current.lastError);
+        if (!replace(current, started)) {
+            return OUTCOME_SKIPPED;
+        }
+
+        File file = new File(started.path);
+        if (!file.isFile()) {
+            return failUpload(id, "Datei nicht gefunden: " + started.path, false);
+        }
+        try {
+            String uploadUrl = started.uploadUrl;
+            long offset = 0;
+            if (uploadUrl != null) {
+                offset = uploader.fetchOffset(uploadUrl, headers);
+                if (offset < 0) {
+                    // The server expired the partial upload; start a new one
+                    uploadUrl = null;
+                    offset = 0;
+                }
+            }
+            if (uploadUrl == null) {
+                uploadUrl = uploader.create(endpoint, headers, file.length(), metadataFor(started, metadata));
+            }
+            final String url = uploadUrl;
+            recordProgress(id, url, offset);
+            progress.onProgress(offset);
+            uploader.upload(file, url, headers, offset, new ResumableUploader.Progress() {
+                @Override
+                public void onProgress(long uploadedBytes) {
+                    recordProgress(id, url, uploadedBytes);
+                    progress.onProgress(uploadedBytes);
+                }
+            });
+            markUploaded(id);
+            return OUTCOME_UPLOADED;
+        } catch (ResumableUploader.HttpStatusException e) {
+            return failUpload(id, e.getMessage(), e.isRetryable());
+        } catch (IOException e) {
+            return failUpload(id, e.getMessage(), true);
+        } catch (RuntimeException e) {
+            // HttpURLConnection rejects bad header values and the like unchecked;
+            // retrying would fail the same way, but the attachment must not stay uploading
+            return failUpload(id, e.toString(), false);
+        }
+    }
+
+    /**
+     * tus metadata for one attachment: the caller's entries plus filename and
+     * content type, and an object name of {@code ownerType/ownerId/filename}
+     * unless the caller set one.
+     */
+    static Map<String, String> metadataFor(Attachment attachment, Map<String, String> base) {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        if (base != null) {
+            metadata.putAll(base);
+        }
+        metadata.put("filename", attachment.fileName());
+        metadata.put("contentType", attachment.mimeType);
+        if (!metadata.containsKey("objectName")) {
+            metadata.put("objectName", attachment.ownerType + "/" + attachment.ownerId + "/" + attachment.fileName());
+        }
+        return metadata;
+    }
+
+    String snapshot() {
+        JSONArray array = new JSONArray();
+        try {
+            for (Attachment attachment : list()) {
+                array.put(attachment.toJson());
+            }
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return array.toString();
+    }
+
+    private void recordProgress(String id, String uploadUrl, long uploadedBytes) {
+        while (true) {
+            Attachment current = byId.get(id);
+            if (current == null || !current.state.equals(STATE_UPLOADING)) {
+                return;
+            }
+            if (replace(current, current.withProgress(uploadUrl, uploadedBytes))) {
+                return;
+            }
+        }
+    }
+
+    private void markUploaded(String id) {
+        while (true) {
+            Attachment current = byId.get(id);
+            if (current == null || !current.state.equals(STATE_UPLOADING)) {
+                return;
+            }
+            if (replace(current, current.withState(STATE_UPLOADED, current.attempts, null))) {
+                PluginMetrics.ATTACHMENTS_UPLOADED.inc();
+                return;
+            }
+        }
+    }
+
+    private String failUpload(String id, String error, boolean retryable) {
+        while (true) {
+            Attachment current = byId.get(id);
+            if (current == null || !current.state.equals(STATE_UPLOADING)) {
+                return OUTCOME_SKIPPED;
+            }
+            boolean failed = !retryable || current.attempts >= maxAttempts;
+            if (replace(current, current.withState(failed ? STATE_FAILED : STATE_READY, current.attempts, error))) {
+                return failed ? OUTCOME_FAILED : OUTCOME_RETRY;
+            }
+        }
+    }
+
+    private boolean replace(Attachment current, Attachment next) {
+        if (byId.replace(current.id, current, next)) {
+            scheduleFlush();
+            return true;
+        }
+        return false;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                flushScheduled.set(false);
+                store.save(snapshot());
+            });
+        }
+    }
+
+    private void restore(String json) {
+        if (json == null) {
+            return;
+        }
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject stored = array.getJSONObject(i);
+                String state = stored.getString("state");
+                // An upload cut off by process death resumes from the stored offset
+                if (state.equals(STATE_UPLOADING)) {
+                    state = STATE_READY;
+                }
+                Attachment attachment = new Attachment(
+                    nextSeq.getAndIncrement(),
+                    stored.getString("id"),
+                    stored.getString("ownerType"),
+                    stored.getString("ownerId"),
+                    stored.getString("sourcePath"),
+                    stored.getInt("maxDimension"),
+                    stored.getInt("quality"),
+                    stored.getLong("createdAt"),
+                    state,
+                    optString(stored, "path"),
+                    optString(stored, "mimeType"),
+                    stored.optLong("bytes", 0),
+                    stored.optInt("width", 0),
+                    stored.optInt("height", 0),
+                    optString(stored, "uploadUrl"),
+                    stored.optLong("uploadedBytes", 0),
+                    stored.optInt("attempts", 0),
+                    optString(stored, "lastError")
+                );
+                byId.put(attachment.id, attachment);
+            }
+        } catch (JSONException e) {
+            // A corrupt snapshot must not take the plugin down; start with an empty queue
+            byId.clear();
+        }
+    }
+
+    private static String optString(JSONObject json, String key) {
+        return json.isNull(key) ? null : json.optString(key, null);
+    }
+}
@@ -0,0 +1,86 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * A directory of binary payloads handed to the WebView by path instead of as
+ * base64 strings. The WebView fetches them through the Capacitor file URL, so
+ * the bytes are never copied into a JS string or parsed as JSON.
+ *
+ * Files older than {@code maxAgeMs} are pruned whenever a new one is created;
+ * a {@code maxAgeMs} of 0 keeps files until they are deleted explicitly.
+ */
+final class BlobStore {
+
+    /** Subdirectory of the cache dir for short-lived payloads such as exports. */
+    static final String TEMP_DIR = "blobs";
+    static final long TEMP_MAX_AGE_MS = 60 * 60 * 1000;
+
+    private final File dir;
+    private final long maxAgeMs;
+
+    BlobStore(File dir, long maxAgeMs) {
+        this.dir = dir;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    static BlobStore temporary(File cacheDir) {
+        return new BlobStore(new File(cacheDir, TEMP_DIR), TEMP_MAX_AGE_MS);
+    }
+
+    File newFile(String prefix, String extension) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Verzeichnis konnte nicht angelegt werden: " + dir);
+        }
+        if (maxAgeMs > 0) {
+            pruneExpired(System.currentTimeMillis());
+        }
+        return new File(dir, prefix + "_" + UUID.randomUUID() + "." + extension);
+    }
+
+    /** Resolves a path handed out earlier; returns null for anything outside this store. */
+    File resolve(String path) {
+        if (path == null) {
+            return null;
+        }
+        try {
+            File file = new File(path).getCanonicalFile();
+            File parent = file.getParentFile();
+            return parent != null && parent.equals(dir.getCanonicalFile()) ? file : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    boolean delete(String path) {
+        File file = resolve(path);
+        return file != null && file.delete();
+    }
+
+    int pruneExpired(long now) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int pruned = 0;
+        for (File file : files) {
+            if (now - file.lastModified() > maxAgeMs && file.delete()) {
+                pruned++;
+            }
+        }
+        return pruned;
+    }
+
+    long sizeOnDisk() {
+        File[] files = dir.listFiles();
+        long total = 0;
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+}
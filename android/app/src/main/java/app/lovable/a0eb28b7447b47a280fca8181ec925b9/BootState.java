@@ -0,0 +1,87 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import android.content.Context;
+
+import com.getcapacitor.JSObject;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * State the web app needs for its first screen, warmed up while the WebView
+ * is still starting.
+ *
+ * {@link #prefetch} runs on its own thread from {@code MainActivity.onCreate}:
+ * it loads the SharedPreferences files, parses the offline queues and takes a
+ * network snapshot. By the time JS asks, {@link #read} only has to read warm
+ * in-memory state, so one bridge call replaces the separate startup calls to
+ * getActiveTimeTracking, getQueueLength and getNetworkStatus.
+ */
+final class BootState {
+
+    // A snapshot older than this is retaken rather than served
+    private static final long NETWORK_MAX_AGE_MS = 10 * 1000;
+    private static final long PREFETCH_WAIT_MS = 2 * 1000;
+
+    private static volatile FutureTask<JSObject> prefetch;
+
+    private BootState() {
+    }
+
+    static void prefetch(Context context) {
+        Context appContext = context.getApplicationContext();
+        FutureTask<JSObject> task = new FutureTask<>(() -> {
+            long start = System.nanoTime();
+            TimeTrackingPlugin.readActiveTimeTracking(appContext);
+            OfflineSyncPlugin.getQueue(appContext);
+            OfflineSyncPlugin.getAttachmentQueue(appContext);
+            JSObject network = OfflineSyncPlugin.readNetworkStatus(appContext);
+            network.put("capturedAt", System.currentTimeMillis());
+            PluginMetrics.BOOT_PREFETCH_US.record(PluginMetrics.micros(start));
+            return network;
+        });
+        prefetch = task;
+        new Thread(task, "boot-prefetch").start();
+    }
+
+    /**
+     * Waits briefly for a running prefetch and assembles the boot state. The
+     * prefetched network snapshot is handed out once; later calls, or calls
+     * after the prefetch went stale, query the network directly.
+     */
+    static JSObject read(Context context) {
+        Context appContext = context.getApplicationContext();
+        JSObject network = null;
+        FutureTask<JSObject> task = prefetch;
+        prefetch = null;
+        if (task != null) {
+            try {
+                network = task.get(PREFETCH_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                // Fall back to loading everything inline below
+            }
+        }
+        if (network == null || System.currentTimeMillis() - network.optLong("capturedAt") > NETWORK_MAX_AGE_MS) {
+            network = OfflineSyncPlugin.readNetworkStatus(appContext);
+            network.put("capturedAt", System.currentTimeMillis());
+        }
+
+        OfflineActionQueue queue = OfflineSyncPlugin.getQueue(appContext);
+        PluginMetrics.QUEUE_DEPTH.set(queue.unsyncedCount());
+        PluginMetrics.DEAD_LETTER_DEPTH.set(queue.deadLetterCount());
+        JSObject queueState = new JSObject();
+        queueState.put("length", queue.unsyncedCount());
+        queueState.put("deadLetterCount", queue.deadLetterCount());
+        queueState.put("pendingAttachments", OfflineSyncPlugin.getAttachmentQueue(appContext).pendingCount());
+
+        JSObject state = new JSObject();
+        state.put("timeTracking", TimeTrackingPlugin.readActiveTimeTracking(appContext));
+        state.put("queue", queueState);
+        state.put("network", network);
+        return state;
+    }
+}
@@ -4,13 +4,11 @@ import android.Manifest;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Path;
+import android.net.Uri;
 import android.os.Environment;
 import android.util.Base64;
 
+import com.getcapacitor.FileUtils;
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
@@ -23,7 +21,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -45,6 +42,9 @@ public class DeliveryNotesPlugin extends Plugin {
     
     private static final String PREFS_NAME = "DeliveryNotesPrefs";
     private static final String KEY_PENDING_SIGNATURES = "pending_signatures";
+    private static final String SIGNATURES_DIR = "signatures";
+    private static final String OUTPUT_FILE = "file";
+    private static final String OUTPUT_BASE64 = "base64";
 
     @PluginMethod
     public void getPendingDeliveryNotes(PluginCall call) {
@@ -92,26 +92,38 @@ public class DeliveryNotesPlugin extends Plugin {
             return;
         }
 
+        // Callers that fetch the PNG through signatureWebPath can skip the base64 copy
+        boolean returnBase64 = call.getBoolean("returnBase64", true);
+
+        long start = System.nanoTime();
         try {
             // Convert signature data to bitmap and save
-            String signatureBase64 = convertSignatureToBitmap(signatureData);
+            byte[] signaturePng = convertSignatureToPng(signatureData);
             
-            if (signatureBase64 == null) {
+            if (signaturePng == null) {
                 call.reject("Fehler beim Konvertieren der Signatur");
                 return;
             }
 
-            // Save signature to local storage for offline sync
-            savePendingSignature(deliveryNoteId, signerName, signatureBase64);
+            // Keep the PNG as a file for offline sync instead of a base64 preference string
+            File signatureFile = getSignatureStore().newFile(deliveryNoteId.replaceAll("[^A-Za-z0-9_-]", "_"), "png");
+            writeFile(signatureFile, signaturePng);
+            savePendingSignature(deliveryNoteId, signerName, signatureFile.getAbsolutePath());
             
             JSObject result = new JSObject();
             result.put("success", true);
             result.put("deliveryNoteId", deliveryNoteId);
-            result.put("signatureBase64", signatureBase64);
+            result.put("signaturePath", signatureFile.getAbsolutePath());
+            result.put("signatureWebPath", toWebPath(signatureFile));
+            result.put("signatureBytes", signaturePng.length);
+            if (returnBase64) {
+                result.put("signatureBase64", Base64.encodeToString(signaturePng, Base64.DEFAULT));
+            }
             result.put("signedAt", new Date().getTime());
             result.put("message", "Lieferschein erfolgreich signiert");
             
             call.resolve(result);
+            PluginMetrics.SIGN_DELIVERY_NOTE_US.record(PluginMetrics.micros(start));
             
         } catch (Exception e) {
             call.reject("Fehler beim Signieren des Lieferscheins: " + e.getMessage());
@@ -133,6 +145,11 @@ public class DeliveryNotesPlugin extends Plugin {
                 signatureObj.put("deliveryNoteId", signature.getString("deliveryNoteId"));
                 signatureObj.put("signerName", signature.getString("signerName"));
                 signatureObj.put("signedAt", signature.getLong("signedAt"));
+                if (signature.has("signaturePath")) {
+                    File signatureFile = new File(signature.getString("signaturePath"));
+                    signatureObj.put("signaturePath", signatureFile.getAbsolutePath());
+                    signatureObj.put("signatureWebPath", toWebPath(signatureFile));
+                }
                 result.put(signatureObj);
             }
             
@@ -148,6 +165,17 @@ public class DeliveryNotesPlugin extends Plugin {
     @PluginMethod
     public void clearPendingSignatures(PluginCall call) {
         SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        
+        try {
+            JSONArray pendingArray = new JSONArray(prefs.getString(KEY_PENDING_SIGNATURES, "[]"));
+            BlobStore signatureStore = getSignatureStore();
+            for (int i = 0; i < pendingArray.length(); i++) {
+                signatureStore.delete(pendingArray.getJSONObject(i).optString("signaturePath", null));
+            }
+        } catch (JSONException e) {
+            // The preference is removed below either way; orphaned files are harmless
+        }
+        
         SharedPreferences.Editor editor = prefs.edit();
         editor.remove(KEY_PENDING_SIGNATURES);
         editor.apply();
@@ -161,8 +189,8 @@ public class DeliveryNotesPlugin extends Plugin {
     @PluginMethod
     public void createSignatureBitmap(PluginCall call) {
         JSArray pathsArray = call.getArray("paths");
-        int width = call.getInt("width") != null ? call.getInt("width") : 400;
-        int height = call.getInt("height") != null ? call.getInt("height") : 200;
+        int width = call.getInt("width") != null ? call.getInt("width") : SignatureRenderer.DEFAULT_WIDTH;
+        int height = call.getInt("height") != null ? call.getInt("height") : SignatureRenderer.DEFAULT_HEIGHT;
         
         if (pathsArray == null) {
             call.reject("Pfad-Daten sind erforderlich");
@@ -170,46 +198,19 @@ public class DeliveryNotesPlugin extends Plugin {
         }
 
         try {
-            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-            canvas.drawColor(Color.WHITE);
-            
-            Paint paint = new Paint();
-            paint.setAntiAlias(true);
-            paint.setColor(Color.BLACK);
-            paint.setStyle(Paint.Style.STROKE);
-            paint.setStrokeWidth(3f);
-            paint.setStrokeCap(Paint.Cap.ROUND);
-            paint.setStrokeJoin(Paint.Join.ROUND);
-            
-            // Draw signature paths
-            for (int i = 0; i < pathsArray.length(); i++) {
-                JSObject pathObj = new JSObject(pathsArray.getJSONObject(i).toString());
-                JSArray points = new JSArray(pathObj.getJSONArray("points").toString());
-                
-                if (points != null && points.length() > 1) {
-                    Path path = new Path();
-                    JSObject firstPoint = new JSObject(points.getJSONObject(0).toString());
-                    path.moveTo((float) firstPoint.getDouble("x"), (float) firstPoint.getDouble("y"));
-                    
-                    for (int j = 1; j < points.length(); j++) {
-                        JSObject point = new JSObject(points        .getJSONObject(j).toString());
-                        path.lineTo((float) point.getDouble("x"), (float) point.getDouble("y"));
-                    }
-                    
-                    canvas.drawPath(path, paint);
-                }
-            }
-            
-            // Convert to base64
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-            byte[] byteArray = baos.toByteArray();
-            String base64 = Base64.encodeToString(byteArray, Base64.DEFAULT);
+            byte[] png = renderPng(pathsArray, width, height);
             
             JSObject result = new JSObject();
             result.put("success", true);
-            result.put("base64", base64);
+            if (OUTPUT_FILE.equals(call.getString("output", OUTPUT_BASE64))) {
+                File file = BlobStore.temporary(getContext().getCacheDir()).newFile("signature", "png");
+                writeFile(file, png);
+                result.put("path", file.getAbsolutePath());
+                result.put("webPath", toWebPath(file));
+                result.put("bytes", png.length);
+            } else {
+                result.put("base64", Base64.encodeToString(png, Base64.DEFAULT));
+            }
             call.resolve(result);
             
         } catch (Exception e) {
@@ -217,58 +218,45 @@ public class DeliveryNotesPlugin extends Plugin {
         }
     }
 
-    private String convertSignatureToBitmap(JSObject signatureData) {
+    private byte[] convertSignatureToPng(JSObject signatureData) {
         try {
             // Extract signature path data
-            JSArray paths = new JSArray(signatureData.getJSONArray("paths").toString());
-            if (paths == null) return null;
+            JSONArray paths = signatureData.getJSONArray("paths");
             
-            int width = signatureData.getInteger("width") != null ? signatureData.getInteger("width") : 400;
-            int height = signatureData.getInteger("height") != null ? signatureData.getInteger("height") : 200;
+            int width = signatureData.getInteger("width") != null ? signatureData.getInteger("width") : SignatureRenderer.DEFAULT_WIDTH;
+            int height = signatureData.getInteger("height") != null ? signatureData.getInteger("height") : SignatureRenderer.DEFAULT_HEIGHT;
             
-            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-            canvas.drawColor(Color.WHITE);
-            
-            Paint paint = new Paint();
-            paint.setAntiAlias(true);
-            paint.setColor(Color.BLACK);
-            paint.setStyle(Paint.Style.STROKE);
-            paint.setStrokeWidth(3f);
-            paint.setStrokeCap(Paint.Cap.ROUND);
-            paint.setStrokeJoin(Paint.Join.ROUND);
-            
-            // Draw signature paths
-            for (int i = 0; i < paths.length(); i++) {
-                JSObject pathObj = new JSObject(paths.getJSONObject(i).toString());
-                JSArray points = new JSArray(pathObj.getJSONArray("points").toString());
-                
-                if (points != null && points.length() > 1) {
-                    Path path = new Path();
-                    JSObject firstPoint = new JSObject(points.getJSONObject(0).toString());
-                    path.moveTo((float) firstPoint.getDouble("x"), (float) firstPoint.getDouble("y"));
-                    
-                    for (int j = 1; j < points.length(); j++) {
-                        JSObject point = new JSObject(points.getJSONObject(j).toString());
-                        path.lineTo((float) point.getDouble("x"), (float) point.getDouble("y"));
-                    }
-                    
-                    canvas.drawPath(path, paint);
-                }
-            }
-            
-            // Convert to base64
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-            byte[] byteArray = baos.toByteArray();
-            return Base64.encodeToString(byteArray, Base64.DEFAULT);
+            return renderPng(paths, width, height);
             
         } catch (Exception e) {
             return null;
         }
     }
 
-    private void savePendingSignature(String deliveryNoteId, String signerName, String signatureBase64) {
+    private byte[] renderPng(JSONArray paths, int width, int height) throws JSONException {
+        Bitmap bitmap = SignatureRenderer.render(SignatureRenderer.parsePaths(paths), width, height);
+        try {
+            return SignatureRenderer.encodePng(bitmap);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private BlobStore getSignatureStore() {
+        return new BlobStore(new File(getContext().getFilesDir(), SIGNATURES_DIR), 0);
+    }
+
+    private String toWebPath(File file) {
+        return FileUtils.getPortablePath(getContext(), getBridge().getLocalUrl(), Uri.fromFile(file));
+    }
+
+    private static void writeFile(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+    }
+
+    private void savePendingSignature(String deliveryNoteId, String signerName, String signaturePath) {
         SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         String pendingSignaturesJson = prefs.getString(KEY_PENDING_SIGNATURES, "[]");
         
@@ -278,7 +266,7 @@ public class DeliveryNotesPlugin extends Plugin {
             JSONObject newSignature = new JSONObject();
             newSignature.put("deliveryNoteId", deliveryNoteId);
             newSignature.put("signerName", signerName);
-            newSignature.put("signatureBase64", signatureBase64);
+            newSignature.put("signaturePath", signaturePath);
             newSignature.put("signedAt", new Date().getTime());
             
             pendingArray.put(newSignature);
@@ -286,6 +274,7 @@ public class DeliveryNotesPlugin extends Plugin {
             SharedPreferences.Editor editor = prefs.edit();
             editor.putString(KEY_PENDING_SIGNATURES, pendingArray.toString());
             editor.apply();
+            PluginMetrics.SIGNATURES_SAVED.inc();
             
         } catch (JSONException e) {
             // Handle error silently for now
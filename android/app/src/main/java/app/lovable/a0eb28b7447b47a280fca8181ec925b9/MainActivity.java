@@ -8,11 +8,14 @@ public class MainActivity extends BridgeActivity {
     
     @Override
     public void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
+        // Load local state off the main thread while the bridge and WebView start
+        BootState.prefetch(this);
         
-        // Register native plugins
+        // Register native plugins; the bridge is built in super.onCreate, so this must come first
         registerPlugin(TimeTrackingPlugin.class);
         registerPlugin(DeliveryNotesPlugin.class);
         registerPlugin(OfflineSyncPlugin.class);
+        
+        super.onCreate(savedInstanceState);
     }
 }
\ No newline at end of file
@@ -0,0 +1,503 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory offline action queue backed by a persisted JSON snapshot.
+ *
+ * Producers and the sync consumer never block each other: actions live in
+ * concurrent maps and every state change (pending -> in-flight -> synced, or
+ * dead-lettered) is a single compare-and-set on the action's status. In-flight
+ * actions are leased to an owner until the lease expires, so two sync triggers
+ * never upload the same action at once. Persistence is coalesced onto one
+ * writer so the snapshot is always written in order.
+ */
+class OfflineActionQueue {
+
+    static final int STATE_PENDING = 0;
+    static final int STATE_IN_FLIGHT = 1;
+    static final int STATE_SYNCED = 2;
+    static final int STATE_DEAD = 3;
+
+    static final String OUTCOME_SYNCED = "synced";
+    static final String OUTCOME_RETRY = "retry";
+    static final String OUTCOME_DEAD = "dead";
+    static final String OUTCOME_STALE = "stale";
+    static final String OUTCOME_UNKNOWN = "unknown";
+
+    private static final String[] STATE_NAMES = { "pending", "inFlight", "synced", "dead" };
+
+    interface Store {
+        String load();
+        void save(String snapshot);
+    }
+
+    /** Immutable status of an action; replaced as a whole on every transition. */
+    static final class Status {
+        final int state;
+        final int attempts;
+        final String leaseOwner;
+        final long leaseExpiresAt;
+        final String lastError;
+
+        Status(int state, int attempts, String leaseOwner, long leaseExpiresAt, String lastError) {
+            this.state = state;
+            this.attempts = attempts;
+            this.leaseOwner = leaseOwner;
+            this.leaseExpiresAt = leaseExpiresAt;
+            this.lastError = lastError;
+        }
+    }
+
+    static final class Action {
+        final long seq;
+        final String id;
+        final String actionType;
+        final String actionData;
+        final long timestamp;
+        final AtomicReference<Status> status;
+        volatile long syncedAt;
+
+        Action(long seq, String id, String actionType, String actionData, long timestamp, Status status) {
+            this.seq = seq;
+            this.id = id;
+            this.actionType = actionType;
+            this.actionData = actionData;
+            this.timestamp = timestamp;
+            this.status = new AtomicReference<>(status);
+        }
+
+        int getState() {
+            return status.get().state;
+        }
+
+        int getAttempts() {
+            return status.get().attempts;
+        }
+    }
+
+    /** Per-item outcome reported by the uploader for one leased action. */
+    static final class Result {
+        final String actionId;
+        final boolean success;
+        final boolean retryable;
+        final String error;
+
+        Result(String actionId, boolean success, boolean retryable, String error) {
+            this.actionId = actionId;
+            this.success = success;
+            this.retryable = retryable;
+            this.error = error;
+        }
+    }
+
+    private static final Status PENDING = new Status(STATE_PENDING, 0, null, 0, null);
+
+    private final ConcurrentSkipListMap<Long, Action> ordered = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Action> byId = new ConcurrentHashMap<>();
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final AtomicInteger unsyncedCount = new AtomicInteger();
+    private final AtomicInteger deadCount = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /** Stored records that could not be read; written back unchanged so nothing is lost. */
+    private final JSONArray unreadable = new JSONArray();
+    private final Store store;
+    private final Executor writer;
+    private final int maxAttempts;
+
+    OfflineActionQueue(Store store, Executor writer, int maxAttempts) {
+        this.store = store;
+        this.writer = writer;
+        this.maxAttempts = maxAttempts;
+        restore(store.load());
+    }
+
+    Action enqueue(String actionType, String actionData, long timestamp) {
+        long seq = nextSeq.getAndIncrement();
+        Action action = new Action(seq, timestamp + "_" + seq, actionType, actionData, timestamp, PENDING);
+        byId.put(action.id, action);
+        ordered.put(seq, action);
+        unsyncedCount.incrementAndGet();
+        scheduleFlush();
+        return action;
+    }
+
+    /** Returns pending and in-flight actions; dead-lettered ones are listed separately. */
+    List<Action> getUnsynced() {
+        return collect(STATE_PENDING, STATE_IN_FLIGHT);
+    }
+
+    List<Action> getDeadLetters() {
+        return collect(STATE_DEAD, STATE_DEAD);
+    }
+
+    /**
+     * Leases up to {@code limit} actions to {@code owner} until
+     * {@code now + leaseMillis}. Pending actions and actions whose lease has
+     * expired are eligible; each is handed to exactly one caller, however many
+     * consumers race for it. An action that already used up its attempts is
+     * dead-lettered instead of being handed out again; besides expired leases
+     * that covers actions restored or released as pending after their last
+     * attempt, e.g. a record that crashed the app during every upload.
+     */
+    List<Action> claim(String owner, int limit, long leaseMillis, long now) {
+        List<Action> claimed = new ArrayList<>();
+        boolean changed = false;
+        for (Action action : ordered.values()) {
+            if (claimed.size() >= limit) {
+                break;
+            }
+            Status current = action.status.get();
+            boolean expired = current.state == STATE_IN_FLIGHT && current.leaseExpiresAt <= now;
+            if (current.state != STATE_PENDING && !expired) {
+                continue;
+            }
+            if (current.attempts >= maxAttempts) {
+                String error = expired
+                    ? "Lease expired after " + current.attempts + " attempts"
+                    : "Not acknowledged after " + current.attempts + " attempts";
+                Status dead = new Status(STATE_DEAD, current.attempts, null, 0, error);
+                if (action.status.compareAndSet(current, dead)) {
+                    unsyncedCount.decrementAndGet();
+                    deadCount.incrementAndGet();
+                    changed = true;
+                }
+                continue;
+            }
+            Status leased = new Status(STATE_IN_FLIGHT, current.attempts + 1, owner, now + leaseMillis, current.lastError);
+            if (action.status.compareAndSet(current, leased)) {
+                claimed.add(action);
+                changed = true;
+            }
+        }
+        if (changed) {
+            // Attempt counters must survive a crash so a poison record cannot loop forever
+            scheduleFlush();
+        }
+        return claimed;
+    }
+
+    /**
+     * Returns an in-flight action to pending, e.g. after the uploader gave up
+     * on it. Like failures in {@link #complete}, this only works for the owner
+     * of the lease, so one trigger cannot free an action another is still
+     * uploading. Returns false otherwise.
+     */
+    boolean release(String owner, String actionId) {
+        Action action = byId.get(actionId);
+        if (action == null) {
+            return false;
+        }
+        Status current = action.status.get();
+        if (current.state != STATE_IN_FLIGHT || owner == null || !owner.equals(current.leaseOwner)) {
+            return false;
+        }
+        Status pending = new Status(STATE_PENDING, current.attempts, null, 0, current.lastError);
+        if (action.status.compareAndSet(current, pending)) {
+            scheduleFlush();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Marks an action as synced. Returns false if it is unknown or was already
+     * synced, so a duplicate acknowledgement never double-counts.
+     */
+    boolean markSynced(String actionId, long syncedAt) {
+        Action action = byId.get(actionId);
+        return action != null && transitionToSynced(action, syncedAt);
+    }
+
+    /**
+     * Applies the per-item results of an uploaded batch. Successes are always
+     * accepted, since the data reached the server even if the lease lapsed in
+     * the meantime. Failures only count when {@code owner} still holds the
+     * lease; otherwise another consumer owns the action and the report is
+     * stale. Non-retryable failures, and retryable ones past the attempt
+     * limit, go to the dead-letter area.
+     */
+    List<String> complete(String owner, List<Result> results, long now) {
+        List<String> outcomes = new ArrayList<>(results.size());
+        for (Result result : results) {
+            Action action = byId.get(result.actionId);
+            if (action == null) {
+                outcomes.add(OUTCOME_UNKNOWN);
+            } else if (result.success) {
+                transitionToSynced(action, now);
+                outcomes.add(OUTCOME_SYNCED);
+            } else {
+                outcomes.add(fail(action, owner, result));
+            }
+        }
+        return outcomes;
+    }
+
+    /** Moves a dead-lettered action back to pending with a fresh attempt budget. */
+    boolean retryDeadLetter(String actionId) {
+        Action action = byId.get(actionId);
+        if (action == null) {
+            return false;
+        }
+        Status current = action.status.get();
+        if (current.state != STATE_DEAD) {
+            return false;
+        }
+        if (action.status.compareAndSet(current, new Status(STATE_PENDING, 0, null, 0, current.lastError))) {
+            deadCount.decrementAndGet();
+            unsyncedCount.incrementAndGet();
+            scheduleFlush();
+            return true;
+        }
+        return false;
+    }
+
+    /** Permanently removes a dead-lettered action. */
+    boolean discardDeadLetter(String actionId) {
+        Action action = byId.get(actionId);
+        if (action == null) {
+            return false;
+        }
+        Status current = action.status.get();
+        if (current.state != STATE_DEAD) {
+            return false;
+        }
+        // Park it in the terminal state first so a concurrent retry cannot revive it
+        if (!action.status.compareAndSet(current, new Status(STATE_SYNCED, current.attempts, null, 0, current.lastError))) {
+            return false;
+        }
+        byId.remove(actionId, action);
+        ordered.remove(action.seq, action);
+        deadCount.decrementAndGet();
+        scheduleFlush();
+        return true;
+    }
+
+    /** Drops synced actions and returns the number of actions still queued. */
+    int clearSynced() {
+        boolean removed = false;
+        Iterator<Action> it = ordered.values().iterator();
+        while (it.hasNext()) {
+            Action action = it.next();
+            // Synced is terminal, so no concurrent transition can undo this check
+            if (action.getState() == STATE_SYNCED) {
+                it.remove();
+                byId.remove(action.id);
+                removed = true;
+            }
+        }
+        if (removed) {
+            scheduleFlush();
+        }
+        return unsyncedCount.get();
+    }
+
+    int unsyncedCount() {
+        return unsyncedCount.get();
+    }
+
+    int deadLetterCount() {
+        return deadCount.get();
+    }
+
+    static String stateName(int state) {
+        return STATE_NAMES[state];
+    }
+
+    String snapshot() {
+        StringBuilder sb = new StringBuilder(64 + ordered.size() * 128);
+        try {
+            writeActions(sb, false);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        if (unreadable.length() > 0) {
+            String kept = unreadable.toString();
+            sb.setLength(sb.length() - 1);
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(kept, 1, kept.length() - 1).append(']');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Streams the queue as a JSON array into {@code out} without building the
+     * whole document in memory first. With {@code unsyncedOnly} only pending
+     * and in-flight actions are written.
+     *
+     * @return the number of actions written
+     */
+    int writeActions(Appendable out, boolean unsyncedOnly) throws IOException {
+        out.append('[');
+        int written = 0;
+        for (Action action : ordered.values()) {
+            Status status = action.status.get();
+            if (unsyncedOnly && status.state != STATE_PENDING && status.state != STATE_IN_FLIGHT) {
+                continue;
+            }
+            if (written > 0) {
+                out.append(',');
+            }
+            written++;
+            out.append("{\"id\":").append(JSONObject.quote(action.id))
+                .append(",\"actionType\":").append(JSONObject.quote(action.actionType))
+                .append(",\"actionData\":").append(action.actionData)
+                .append(",\"timestamp\":").append(String.valueOf(action.timestamp))
+                .append(",\"synced\":").append(String.valueOf(status.state == STATE_SYNCED))
+                .append(",\"status\":\"").append(STATE_NAMES[status.state]).append('"')
+                .append(",\"attempts\":").append(String.valueOf(status.attempts));
+            if (status.lastError != null) {
+                out.append(",\"lastError\":").append(JSONObject.quote(status.lastError));
+            }
+            if (status.state == STATE_SYNCED) {
+                out.append(",\"syncedAt\":").append(String.valueOf(action.syncedAt));
+            }
+            out.append('}');
+        }
+        out.append(']');
+        return written;
+    }
+
+    private List<Action> collect(int fromState, int toState) {
+        List<Action> result = new ArrayList<>();
+        for (Action action : ordered.values()) {
+            int state = action.getState();
+            if (state >= fromState && state <= toState) {
+                result.add(action);
+            }
+        }
+        return result;
+    }
+
+    private boolean transitionToSynced(Action action, long syncedAt) {
+        while (true) {
+            Status current = action.status.get();
+            if (current.state == STATE_SYNCED) {
+                return false;
+            }
+            Status synced = new Status(STATE_SYNCED, current.attempts, null, 0, null);
+            if (action.status.compareAndSet(current, synced)) {
+                action.syncedAt = syncedAt;
+                if (current.state == STATE_DEAD) {
+                    deadCount.decrementAndGet();
+                } else {
+                    unsyncedCount.decrementAndGet();
+                }
+                scheduleFlush();
+                return true;
+            }
+        }
+    }
+
+    private String fail(Action action, String owner, Result result) {
+        Status current = action.status.get();
+        if (current.state != STATE_IN_FLIGHT || owner == null || !owner.equals(current.leaseOwner)) {
+            return OUTCOME_STALE;
+        }
+        boolean dead = !result.retryable || current.attempts >= maxAttempts;
+        Status next = new Status(dead ? STATE_DEAD : STATE_PENDING, current.attempts, null, 0, result.error);
+        if (!action.status.compareAndSet(current, next)) {
+            return OUTCOME_STALE;
+        }
+        if (dead) {
+            unsyncedCount.decrementAndGet();
+            deadCount.incrementAndGet();
+        }
+        scheduleFlush();
+        return dead ? OUTCOME_DEAD : OUTCOME_RETRY;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                // Clear the flag before reading so later mutations schedule another write
+                flushScheduled.set(false);
+                store.save(snapshot());
+            });
+        }
+    }
+
+    private void restore(String json) {
+        if (json == null) {
+            return;
+        }
+        JSONArray array;
+        try {
+            array = new JSONArray(json);
+        } catch (JSONException e) {
+            // Keep the whole corrupt snapshot as one string element instead of overwriting it
+            unreadable.put(json);
+            PluginMetrics.ACTIONS_UNREADABLE.inc();
+            return;
+        }
+        for (int i = 0; i < array.length(); i++) {
+            try {
+                restoreAction(array.getJSONObject(i));
+            } catch (JSONException e) {
+                // One bad record must not cost the others; it is kept as stored
+                unreadable.put(array.opt(i));
+                PluginMetrics.ACTIONS_UNREADABLE.inc();
+            }
+        }
+    }
+
+    private void restoreAction(JSONObject stored) throws JSONException {
+        int state = parseState(stored);
+        // Leases die with the process: anything unacknowledged comes back as pending
+        if (state == STATE_IN_FLIGHT) {
+            state = STATE_PENDING;
+        }
+        Status status = new Status(
+            state,
+            stored.optInt("attempts", 0),
+            null,
+            0,
+            stored.has("lastError") ? stored.getString("lastError") : null
+        );
+        String id = stored.getString("id");
+        String actionType = stored.getString("actionType");
+        String actionData = stored.getJSONObject("actionData").toString();
+        long timestamp = stored.getLong("timestamp");
+
+        long seq = nextSeq.getAndIncrement();
+        Action action = new Action(seq, id, actionType, actionData, timestamp, status);
+        action.syncedAt = stored.optLong("syncedAt", 0);
+        byId.put(action.id, action);
+        ordered.put(seq, action);
+        if (state == STATE_PENDING) {
+            unsyncedCount.incrementAndGet();
+        } else if (state == STATE_DEAD) {
+            deadCount.incrementAndGet();
+        }
+    }
+
+    private static int parseState(JSONObject stored) {
+        String name = stored.optString("status", null);
+        if (name != null) {
+            for (int state = 0; state < STATE_NAMES.length; state++) {
+                if (STATE_NAMES[state].equals(name)) {
+                    return state;
+                }
+            }
+        }
+        // Snapshots written before statuses existed only carry the synced flag
+        return stored.optBoolean("synced", false) ? STATE_SYNCED : STATE_PENDING;
+    }
+}
@@ -5,8 +5,10 @@ import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkCapabilities;
 import android.net.NetworkInfo;
+import android.net.Uri;
 import android.os.Build;
 
+import com.getcapacitor.FileUtils;
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
@@ -14,11 +16,24 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 @CapacitorPlugin(name = "OfflineSync")
 public class OfflineSyncPlugin extends Plugin {
@@ -27,6 +42,23 @@ public class OfflineSyncPlugin extends Plugin {
     private static final String KEY_PENDING_ACTIONS = "pending_actions";
     private static final String KEY_TIME_ENTRIES = "offline_time_entries";
     private static final String KEY_MATERIAL_ENTRIES = "offline_material_entries";
+    private static final int DEFAULT_CLAIM_LIMIT = 50;
+    private static final long DEFAULT_LEASE_MS = 2 * 60 * 1000;
+    private static final String DEFAULT_LEASE_OWNER = "native";
+    private static final int MAX_SYNC_ATTEMPTS = 5;
+    private static final String METRICS_DIR = "metrics";
+    private static final String KEY_ATTACHMENTS = "offline_attachments";
+    private static final String ATTACHMENTS_DIR = "attachments";
+    private static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+    private static final int UPLOAD_TIMEOUT_MS = 30 * 1000;
+
+    // Shared across bridge instances so every caller sees the same queue state
+    private static final Executor QUEUE_WRITER = Executors.newSingleThreadExecutor();
+    private static volatile OfflineActionQueue actionQueue;
+    // One image is decoded at a time to keep peak memory at a single bitmap
+    private static final Executor ATTACHMENT_PROCESSOR = Executors.newSingleThreadExecutor();
+    private static final Executor ATTACHMENT_UPLOADER = Executors.newSingleThreadExecutor();
+    private static volatile AttachmentQueue attachmentQueue;
 
     @PluginMethod
     public void addOfflineAction(PluginCall call) {
@@ -38,138 +70,222 @@ public class OfflineSyncPlugin extends Plugin {
             return;
         }
 
+        long start = System.nanoTime();
+        OfflineActionQueue queue = getQueue();
+        OfflineActionQueue.Action action = queue.enqueue(actionType, actionData.toString(), new Date().getTime());
+        PluginMetrics.ACTIONS_ENQUEUED.inc();
+        updateQueueGauges(queue);
+        
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("actionId", action.id);
+        result.put("queueLength", queue.unsyncedCount());
+        call.resolve(result);
+        PluginMetrics.ADD_OFFLINE_ACTION_US.record(PluginMetrics.micros(start));
+    }
+
+    @PluginMethod
+    public void getPendingActions(PluginCall call) {
+        long start = System.nanoTime();
         try {
-            SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            String pendingActionsJson = prefs.getString(KEY_PENDING_ACTIONS, "[]");
-            
-            JSONArray pendingArray = new JSONArray(pendingActionsJson);
-            
-            JSONObject newAction = new JSONObject();
-            newAction.put("id", System.currentTimeMillis() + "_" + (int)(Math.random() * 1000));
-            newAction.put("actionType", actionType);
-            newAction.put("actionData", new JSONObject(actionData.toString()));
-            newAction.put("timestamp", new Date().getTime());
-            newAction.put("synced", false);
-            
-            pendingArray.put(newAction);
-            
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putString(KEY_PENDING_ACTIONS, pendingArray.toString());
-            editor.apply();
+            JSArray result = new JSArray();
+            for (OfflineActionQueue.Action action : getQueue().getUnsynced()) {
+                result.put(toJSObject(action));
+            }
             
-            JSObject result = new JSObject();
-            result.put("success", true);
-            result.put("actionId", newAction.getString("id"));
-            result.put("queueLength", pendingArray.length());
-            call.resolve(result);
+            JSObject response = new JSObject();
+            response.put("pendingActions", result);
+            response.put("count", result.length());
+            call.resolve(response);
+            PluginMetrics.GET_PENDING_ACTIONS_US.record(PluginMetrics.micros(start));
             
         } catch (JSONException e) {
-            call.reject("Fehler beim Speichern der Offline-Aktion: " + e.getMessage());
+            call.reject("Fehler beim Laden der ausstehenden Aktionen: " + e.getMessage());
         }
     }
 
     @PluginMethod
-    public void getPendingActions(PluginCall call) {
-        SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        String pendingActionsJson = prefs.getString(KEY_PENDING_ACTIONS, "[]");
+    public void claimPendingActions(PluginCall call) {
+        String owner = call.getString("owner", DEFAULT_LEASE_OWNER);
+        int limit = call.getInt("limit", DEFAULT_CLAIM_LIMIT);
+        long leaseMs = call.getLong("leaseMs", DEFAULT_LEASE_MS);
+        long now = new Date().getTime();
+        long start = System.nanoTime();
         
         try {
-            JSONArray pendingArray = new JSONArray(pendingActionsJson);
+            OfflineActionQueue queue = getQueue();
             JSArray result = new JSArray();
-            
-            for (int i = 0; i < pendingArray.length(); i++) {
-                JSONObject action = pendingArray.getJSONObject(i);
-                if (!action.getBoolean("synced")) {
-                    JSObject actionObj = new JSObject();
-                    actionObj.put("id", action.getString("id"));
-                    actionObj.put("actionType", action.getString("actionType"));
-                    actionObj.put("actionData", new JSObject(action.getJSONObject("actionData").toString()));
-                    actionObj.put("timestamp", action.getLong("timestamp"));
-                    result.put(actionObj);
-                }
+            for (OfflineActionQueue.Action action : queue.claim(owner, limit, leaseMs, now)) {
+                result.put(toJSObject(action));
             }
+            PluginMetrics.SYNC_BATCH_SIZE.record(result.length());
+            updateQueueGauges(queue);
             
             JSObject response = new JSObject();
-            response.put("pendingActions", result);
+            response.put("actions", result);
             response.put("count", result.length());
+            response.put("leaseExpiresAt", now + leaseMs);
             call.resolve(response);
+            PluginMetrics.CLAIM_PENDING_ACTIONS_US.record(PluginMetrics.micros(start));
             
         } catch (JSONException e) {
-            call.reject("Fehler beim Laden der ausstehenden Aktionen: " + e.getMessage());
+            call.reject("Fehler beim Übernehmen der ausstehenden Aktionen: " + e.getMessage());
         }
     }
 
     @PluginMethod
-    public void markActionSynced(PluginCall call) {
-        String actionId = call.getString("actionId");
+    public void completeActions(PluginCall call) {
+        String owner = call.getString("owner", DEFAULT_LEASE_OWNER);
+        JSArray resultsArray = call.getArray("results");
         
-        if (actionId == null) {
-            call.reject("Action ID ist erforderlich");
+        if (resultsArray == null) {
+            call.reject("Ergebnisse sind erforderlich");
             return;
         }
 
+        long start = System.nanoTime();
         try {
-            SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            String pendingActionsJson = prefs.getString(KEY_PENDING_ACTIONS, "[]");
+            List<OfflineActionQueue.Result> results = new ArrayList<>(resultsArray.length());
+            for (int i = 0; i < resultsArray.length(); i++) {
+                JSONObject item = resultsArray.getJSONObject(i);
+                results.add(new OfflineActionQueue.Result(
+                    item.getString("actionId"),
+                    item.getBoolean("success"),
+                    item.optBoolean("retryable", true),
+                    item.has("error") ? item.getString("error") : null
+                ));
+            }
             
-            JSONArray pendingArray = new JSONArray(pendingActionsJson);
+            OfflineActionQueue queue = getQueue();
+            List<String> outcomes = queue.complete(owner, results, new Date().getTime());
             
-            for (int i = 0; i < pendingArray.length(); i++) {
-                JSONObject action = pendingArray.getJSONObject(i);
-                if (action.getString("id").equals(actionId)) {
-                    action.put("synced", true);
-                    action.put("syncedAt", new Date().getTime());
-                    break;
-                }
+            JSArray outcomeArray = new JSArray();
+            for (int i = 0; i < outcomes.size(); i++) {
+                countOutcome(outcomes.get(i));
+                JSObject outcome = new JSObject();
+                outcome.put("actionId", results.get(i).actionId);
+                outcome.put("outcome", outcomes.get(i));
+                outcomeArray.put(outcome);
             }
             
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putString(KEY_PENDING_ACTIONS, pendingArray.toString());
-            editor.apply();
-            
-            JSObject result = new JSObject();
-            result.put("success", true);
-            call.resolve(result);
+            JSObject response = new JSObject();
+            response.put("results", outcomeArray);
+            response.put("queueLength", queue.unsyncedCount());
+            response.put("deadLetterCount", queue.deadLetterCount());
+            call.resolve(response);
+            updateQueueGauges(queue);
+            PluginMetrics.COMPLETE_ACTIONS_US.record(PluginMetrics.micros(start));
             
         } catch (JSONException e) {
-            call.reject("Fehler beim Markieren der Aktion als synchronisiert: " + e.getMessage());
+            call.reject("Fehler beim Verarbeiten der Synchronisationsergebnisse: " + e.getMessage());
         }
     }
 
     @PluginMethod
-    public void clearSyncedActions(PluginCall call) {
+    public void releaseAction(PluginCall call) {
+        String owner = call.getString("owner", DEFAULT_LEASE_OWNER);
+        String actionId = call.getString("actionId");
+        
+        if (actionId == null) {
+            call.reject("Action ID ist erforderlich");
+            return;
+        }
+
+        boolean released = getQueue().release(owner, actionId);
+        if (!released) {
+            // Not leased to this owner (any more), like a stale failure report
+            PluginMetrics.STALE_REPORTS.inc();
+        }
+        
+        JSObject result = new JSObject();
+        result.put("success", released);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getDeadLetterActions(PluginCall call) {
         try {
-            SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            String pendingActionsJson = prefs.getString(KEY_PENDING_ACTIONS, "[]");
-            
-            JSONArray pendingArray = new JSONArray(pendingActionsJson);
-            JSONArray unSyncedArray = new JSONArray();
-            
-            for (int i = 0; i < pendingArray.length(); i++) {
-                JSONObject action = pendingArray.getJSONObject(i);
-                if (!action.getBoolean("synced")) {
-                    unSyncedArray.put(action);
-                }
+            JSArray result = new JSArray();
+            for (OfflineActionQueue.Action action : getQueue().getDeadLetters()) {
+                result.put(toJSObject(action));
             }
             
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putString(KEY_PENDING_ACTIONS, unSyncedArray.toString());
-            editor.apply();
-            
-            JSObject result = new JSObject();
-            result.put("success", true);
-            result.put("remainingActions", unSyncedArray.length());
-            call.resolve(result);
+            JSObject response = new JSObject();
+            response.put("deadLetterActions", result);
+            response.put("count", result.length());
+            call.resolve(response);
             
         } catch (JSONException e) {
-            call.reject("Fehler beim Löschen synchronisierter Aktionen: " + e.getMessage());
+            call.reject("Fehler beim Laden der fehlgeschlagenen Aktionen: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void retryDeadLetterAction(PluginCall call) {
+        String actionId = call.getString("actionId");
+        
+        if (actionId == null) {
+            call.reject("Action ID ist erforderlich");
+            return;
+        }
+
+        JSObject result = new JSObject();
+        result.put("success", getQueue().retryDeadLetter(actionId));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void discardDeadLetterAction(PluginCall call) {
+        String actionId = call.getString("actionId");
+        
+        if (actionId == null) {
+            call.reject("Action ID ist erforderlich");
+            return;
         }
+
+        JSObject result = new JSObject();
+        result.put("success", getQueue().discardDeadLetter(actionId));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void markActionSynced(PluginCall call) {
+        String actionId = call.getString("actionId");
+        
+        if (actionId == null) {
+            call.reject("Action ID ist erforderlich");
+            return;
+        }
+
+        OfflineActionQueue queue = getQueue();
+        if (queue.markSynced(actionId, new Date().getTime())) {
+            PluginMetrics.ACTIONS_SYNCED.inc();
+        }
+        updateQueueGauges(queue);
+        
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void clearSyncedActions(PluginCall call) {
+        int remaining = getQueue().clearSynced();
+        
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("remainingActions", remaining);
+        call.resolve(result);
     }
 
     @PluginMethod
     public void getNetworkStatus(PluginCall call) {
+        call.resolve(readNetworkStatus(getContext()));
+    }
+
+    static JSObject readNetworkStatus(Context context) {
         ConnectivityManager connectivityManager = (ConnectivityManager) 
-            getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+            context.getSystemService(Context.CONNECTIVITY_SERVICE);
         
         boolean isConnected = false;
         String connectionType = "none";
@@ -208,12 +324,13 @@ public class OfflineSyncPlugin extends Plugin {
         JSObject result = new JSObject();
         result.put("connected", isConnected);
         result.put("connectionType", connectionType);
-        call.resolve(result);
+        return result;
     }
 
     @PluginMethod
     public void saveOfflineTimeEntry(PluginCall call) {
         JSObject timeEntry = call.getObject("timeEntry");
+        String entryId = call.getString("entryId");
         
         if (timeEntry == null) {
             call.reject("Time entry data is required");
@@ -223,23 +340,36 @@ public class OfflineSyncPlugin extends Plugin {
         try {
             SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
             String timeEntriesJson = prefs.getString(KEY_TIME_ENTRIES, "[]");
-            
-            JSONArray entriesArray = new JSONArray(timeEntriesJson);
+            long now = new Date().getTime();
             
             JSONObject newEntry = new JSONObject(timeEntry.toString());
-            newEntry.put("id", System.currentTimeMillis() + "_" + (int)(Math.random() * 1000));
-            newEntry.put("createdAt", new Date().getTime());
-            newEntry.put("synced", false);
-            
-            entriesArray.put(newEntry);
+            String updatedJson;
+            if (entryId != null) {
+                updatedJson = OfflineTimeEntries.update(timeEntriesJson, entryId, newEntry, now);
+                if (updatedJson == null) {
+                    call.reject("Zeiteintrag nicht gefunden: " + entryId);
+                    return;
+                }
+            } else {
+                JSObject base = call.getObject("base");
+                updatedJson = OfflineTimeEntries.append(
+                    timeEntriesJson,
+                    newEntry,
+                    call.getString("serverId"),
+                    call.getString("baseRevision"),
+                    base == null ? null : new JSONObject(base.toString()),
+                    now
+                );
+                entryId = newEntry.getString("id");
+            }
             
             SharedPreferences.Editor editor = prefs.edit();
-            editor.putString(KEY_TIME_ENTRIES, entriesArray.toString());
+            editor.putString(KEY_TIME_ENTRIES, updatedJson);
             editor.apply();
             
             JSObject result = new JSObject();
             result.put("success", true);
-            result.put("entryId", newEntry.getString("id"));
+            result.put("entryId", entryId);
             call.resolve(result);
             
         } catch (JSONException e) {
@@ -253,14 +383,9 @@ public class OfflineSyncPlugin extends Plugin {
         String timeEntriesJson = prefs.getString(KEY_TIME_ENTRIES, "[]");
         
         try {
-            JSONArray entriesArray = new JSONArray(timeEntriesJson);
             JSArray result = new JSArray();
-            
-            for (int i = 0; i < entriesArray.length(); i++) {
-                JSONObject entry = entriesArray.getJSONObject(i);
-                if (!entry.getBoolean("synced")) {
-                    result.put(new JSObject(entry.toString()));
-                }
+            for (JSONObject entry : OfflineTimeEntries.unsynced(timeEntriesJson)) {
+                result.put(new JSObject(entry.toString()));
             }
             
             JSObject response = new JSObject();
@@ -274,27 +399,582 @@ public class OfflineSyncPlugin extends Plugin {
     }
 
     @PluginMethod
-    public void getQueueLength(PluginCall call) {
-        SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        String pendingActionsJson = prefs.getString(KEY_PENDING_ACTIONS, "[]");
+    public void mergeTimeEntries(PluginCall call) {
+        JSArray serverEntries = call.getArray("serverEntries");
+        String defaultRule = call.getString("defaultRule", TimeEntryMerge.RULE_LATEST);
+        JSObject rulesObject = call.getObject("rules", new JSObject());
         
+        if (!TimeEntryMerge.Rules.isValid(defaultRule)) {
+            call.reject("Ungültige Merge-Regel: " + defaultRule);
+            return;
+        }
+
         try {
-            JSONArray pendingArray = new JSONArray(pendingActionsJson);
-            int unSyncedCount = 0;
-            
-            for (int i = 0; i < pendingArray.length(); i++) {
-                JSONObject action = pendingArray.getJSONObject(i);
-                if (!action.getBoolean("synced")) {
-                    unSyncedCount++;
+            Map<String, String> fieldRules = new HashMap<>();
+            Iterator<String> fields = rulesObject.keys();
+            while (fields.hasNext()) {
+                String field = fields.next();
+                String rule = rulesObject.getString(field);
+                if (!TimeEntryMerge.Rules.isValid(rule)) {
+                    call.reject("Ungültige Merge-Regel für " + field + ": " + rule);
+                    return;
                 }
+                fieldRules.put(field, rule);
+            }
+            
+            SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String timeEntriesJson = prefs.getString(KEY_TIME_ENTRIES, "[]");
+            // Without the server rows an edited row would look deleted on the server
+            if (serverEntries == null && OfflineTimeEntries.needsServerRows(timeEntriesJson)) {
+                call.reject("Serverstand (serverEntries) ist für bearbeitete Server-Einträge erforderlich");
+                return;
+            }
+            
+            Map<String, JSONObject> serverRows = new HashMap<>();
+            for (int i = 0; serverEntries != null && i < serverEntries.length(); i++) {
+                JSONObject row = serverEntries.getJSONObject(i);
+                serverRows.put(row.getString("id"), row);
+            }
+            
+            OfflineTimeEntries.MergeOutcome outcome = OfflineTimeEntries.merge(
+                timeEntriesJson,
+                serverRows,
+                new TimeEntryMerge.Rules(defaultRule, fieldRules),
+                new Date().getTime()
+            );
+            prefs.edit().putString(KEY_TIME_ENTRIES, outcome.entriesJson).apply();
+            
+            JSArray uploads = new JSArray();
+            for (JSONObject upload : outcome.uploads) {
+                uploads.put(upload);
+            }
+            JSArray conflicts = new JSArray();
+            for (JSONObject conflict : outcome.conflicts) {
+                conflicts.put(conflict);
+            }
+            
+            JSObject result = new JSObject();
+            result.put("uploads", uploads);
+            result.put("conflicts", conflicts);
+            result.put("unchanged", outcome.unchanged);
+            call.resolve(result);
+            
+        } catch (JSONException e) {
+            call.reject("Fehler beim Zusammenführen der Zeiteinträge: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void markTimeEntrySynced(PluginCall call) {
+        String entryId = call.getString("entryId");
+        String serverId = call.getString("serverId");
+        String revision = call.getString("revision");
+        JSObject data = call.getObject("data");
+        
+        if (entryId == null || serverId == null || revision == null || data == null) {
+            call.reject("Eintrags-ID, Server-ID, Revision und hochgeladene Daten sind erforderlich");
+            return;
+        }
+
+        try {
+            SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String updatedJson = OfflineTimeEntries.markSynced(
+                prefs.getString(KEY_TIME_ENTRIES, "[]"),
+                entryId,
+                serverId,
+                revision,
+                new JSONObject(data.toString()),
+                new Date().getTime()
+            );
+            if (updatedJson != null) {
+                prefs.edit().putString(KEY_TIME_ENTRIES, updatedJson).apply();
+            }
+            
+            JSObject result = new JSObject();
+            result.put("success", updatedJson != null);
+            // False if the entry was edited during the upload and still has to be synced
+            result.put("synced", updatedJson != null && OfflineTimeEntries.isSynced(updatedJson, entryId));
+            call.resolve(result);
+            
+        } catch (JSONException e) {
+            call.reject("Fehler beim Markieren des Zeiteintrags: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void resolveTimeEntryConflict(PluginCall call) {
+        String entryId = call.getString("entryId");
+        String action = call.getString("action", OfflineTimeEntries.RESOLVE_MERGE);
+        JSObject values = call.getObject("values");
+        
+        if (entryId == null) {
+            call.reject("Eintrags-ID ist erforderlich");
+            return;
+        }
+
+        try {
+            SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String updatedJson = OfflineTimeEntries.resolveConflict(
+                prefs.getString(KEY_TIME_ENTRIES, "[]"),
+                entryId,
+                action,
+                values == null ? null : new JSONObject(values.toString()),
+                new Date().getTime()
+            );
+            if (updatedJson != null) {
+                prefs.edit().putString(KEY_TIME_ENTRIES, updatedJson).apply();
             }
             
             JSObject result = new JSObject();
-            result.put("length", unSyncedCount);
+            result.put("success", updatedJson != null);
             call.resolve(result);
             
         } catch (JSONException e) {
-            call.reject("Fehler beim Ermitteln der Warteschlangenlänge: " + e.getMessage());
+            call.reject("Fehler beim Auflösen des Konflikts: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getQueueLength(PluginCall call) {
+        JSObject result = new JSObject();
+        OfflineActionQueue queue = getQueue();
+        updateQueueGauges(queue);
+        result.put("length", queue.unsyncedCount());
+        result.put("deadLetterCount", queue.deadLetterCount());
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getBootState(PluginCall call) {
+        long start = System.nanoTime();
+        call.resolve(BootState.read(getContext()));
+        PluginMetrics.GET_BOOT_STATE_US.record(PluginMetrics.micros(start));
+    }
+
+    @PluginMethod
+    public void exportPendingActions(PluginCall call) {
+        boolean unsyncedOnly = call.getBoolean("unsyncedOnly", true);
+        
+        try {
+            File file = BlobStore.temporary(getContext().getCacheDir()).newFile("pending_actions", "json");
+            int count;
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                count = getQueue().writeActions(writer, unsyncedOnly);
+            }
+            
+            JSObject result = new JSObject();
+            result.put("path", file.getAbsolutePath());
+            result.put("webPath", FileUtils.getPortablePath(getContext(), getBridge().getLocalUrl(), Uri.fromFile(file)));
+            result.put("bytes", file.length());
+            result.put("count", count);
+            call.resolve(result);
+            
+        } catch (IOException e) {
+            call.reject("Fehler beim Exportieren der Warteschlange: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void releaseBlob(PluginCall call) {
+        String path = call.getString("path");
+        
+        if (path == null) {
+            call.reject("Pfad ist erforderlich");
+            return;
+        }
+
+        JSObject result = new JSObject();
+        result.put("success", BlobStore.temporary(getContext().getCacheDir()).delete(path));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        try {
+            if (actionQueue != null) {
+                updateQueueGauges(actionQueue);
+            }
+            JSObject result = new JSObject(PluginMetrics.toJson().toString());
+            result.put("device", getDeviceInfo());
+            if (call.getBoolean("reset", false)) {
+                PluginMetrics.reset();
+            }
+            call.resolve(result);
+            
+        } catch (JSONException e) {
+            call.reject("Fehler beim Laden der Metriken: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void dumpMetrics(PluginCall call) {
+        try {
+            if (actionQueue != null) {
+                updateQueueGauges(actionQueue);
+            }
+            JSONObject metrics = PluginMetrics.toJson();
+            metrics.put("device", getDeviceInfo());
+            
+            File dir = new File(getContext().getFilesDir(), METRICS_DIR);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                call.reject("Metrik-Verzeichnis konnte nicht angelegt werden");
+                return;
+            }
+            File file = new File(dir, "metrics_" + new Date().getTime() + ".json");
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(metrics.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("path", file.getAbsolutePath());
+            call.resolve(result);
+            
+        } catch (JSONException | IOException e) {
+            call.reject("Fehler beim Speichern der Metriken: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void queueAttachment(PluginCall call) {
+        String sourcePath = call.getString("sourcePath");
+        String ownerType = call.getString("ownerType");
+        String ownerId = call.getString("ownerId");
+        
+        if (sourcePath == null || ownerType == null || ownerId == null) {
+            call.reject("Quelle, Typ und ID des Eintrags sind erforderlich");
+            return;
+        }
+
+        int maxDimension = call.getInt("maxDimension", AttachmentProcessor.DEFAULT_MAX_DIMENSION);
+        int quality = call.getInt("quality", AttachmentProcessor.DEFAULT_QUALITY);
+        if (maxDimension <= 0 || quality < 0 || quality > 100) {
+            call.reject("Ungültige Bildgröße oder Qualität");
+            return;
+        }
+
+        AttachmentQueue queue = getAttachmentQueue();
+        AttachmentQueue.Attachment attachment = queue.add(ownerType, ownerId, sourcePath, maxDimension, quality, new Date().getTime());
+        processAttachment(getContext().getApplicationContext(), queue, attachment);
+        PluginMetrics.ATTACHMENT_DEPTH.set(queue.pendingCount());
+        
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("attachmentId", attachment.id);
+        result.put("state", attachment.state);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getAttachments(PluginCall call) {
+        String state = call.getString("state");
+        AttachmentQueue queue = getAttachmentQueue();
+        
+        JSArray result = new JSArray();
+        for (AttachmentQueue.Attachment attachment : state == null ? queue.list() : queue.inState(state)) {
+            result.put(toJSObject(attachment));
+        }
+        
+        JSObject response = new JSObject();
+        response.put("attachments", result);
+        response.put("count", result.length());
+        response.put("pendingCount", queue.pendingCount());
+        call.resolve(response);
+    }
+
+    @PluginMethod
+    public void uploadAttachments(PluginCall call) {
+        String endpoint = call.getString("endpoint");
+        
+        if (endpoint == null) {
+            call.reject("Upload-Endpunkt ist erforderlich");
+            return;
+        }
+        if (!ResumableUploader.isHttpUrl(endpoint)) {
+            call.reject("Upload-Endpunkt muss eine http(s)-URL sein");
+            return;
+        }
+
+        int chunkSize = call.getInt("chunkSize", DEFAULT_CHUNK_SIZE);
+        if (chunkSize <= 0) {
+            call.reject("Ungültige Chunk-Größe");
+            return;
+        }
+        Map<String, String> headers = toStringMap(call.getObject("headers"));
+        Map<String, String> metadata = toStringMap(call.getObject("metadata"));
+        
+        ATTACHMENT_UPLOADER.execute(() -> {
+            try {
+                AttachmentQueue queue = getAttachmentQueue();
+                ResumableUploader uploader = new ResumableUploader(chunkSize, UPLOAD_TIMEOUT_MS);
+                JSArray results = new JSArray();
+                for (AttachmentQueue.Attachment attachment : queue.inState(AttachmentQueue.STATE_READY)) {
+                    String outcome = queue.upload(attachment.id, uploader, endpoint, headers, metadata, uploadedBytes -> {
+                        JSObject progress = new JSObject();
+                        progress.put("attachmentId", attachment.id);
+                        progress.put("uploadedBytes", uploadedBytes);
+                        progress.put("bytes", attachment.bytes);
+                        notifyListeners("attachmentUploadProgress", progress);
+                    });
+                
+                    JSObject item = new JSObject();
+                    item.put("attachmentId", attachment.id);
+                    item.put("outcome", outcome);
+                    AttachmentQueue.Attachment current = queue.get(attachment.id);
+                    if (current != null && current.lastError != null) {
+                        item.put("error", current.lastError);
+                    }
+                    results.put(item);
+                }
+                PluginMetrics.ATTACHMENT_DEPTH.set(queue.pendingCount());
+            
+                JSObject response = new JSObject();
+                response.put("results", results);
+                response.put("pendingCount", queue.pendingCount());
+                call.resolve(response);
+            } catch (Exception e) {
+                // Runs off the bridge thread, so an escaping exception would leave the call open
+                call.reject("Fehler beim Hochladen der Anhänge: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void retryAttachment(PluginCall call) {
+        String attachmentId = call.getString("attachmentId");
+        
+        if (attachmentId == null) {
+            call.reject("Anhang-ID ist erforderlich");
+            return;
+        }
+
+        AttachmentQueue queue = getAttachmentQueue();
+        boolean retried = queue.retry(attachmentId);
+        AttachmentQueue.Attachment attachment = queue.get(attachmentId);
+        if (retried && attachment != null && AttachmentQueue.STATE_PROCESSING.equals(attachment.state)) {
+            processAttachment(getContext().getApplicationContext(), queue, attachment);
+        }
+        
+        JSObject result = new JSObject();
+        result.put("success", retried);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void removeAttachment(PluginCall call) {
+        String attachmentId = call.getString("attachmentId");
+        
+        if (attachmentId == null) {
+            call.reject("Anhang-ID ist erforderlich");
+            return;
+        }
+
+        AttachmentQueue queue = getAttachmentQueue();
+        AttachmentQueue.Attachment removed = queue.remove(attachmentId);
+        if (removed != null) {
+            getAttachmentStore().delete(removed.path);
+        }
+        PluginMetrics.ATTACHMENT_DEPTH.set(queue.pendingCount());
+        
+        JSObject result = new JSObject();
+        result.put("success", removed != null);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void clearUploadedAttachments(PluginCall call) {
+        AttachmentQueue queue = getAttachmentQueue();
+        BlobStore store = getAttachmentStore();
+        List<AttachmentQueue.Attachment> removed = queue.clearUploaded();
+        for (AttachmentQueue.Attachment attachment : removed) {
+            store.delete(attachment.path);
+        }
+        
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("removed", removed.size());
+        call.resolve(result);
+    }
+
+    private OfflineActionQueue getQueue() {
+        return getQueue(getContext());
+    }
+
+    static OfflineActionQueue getQueue(Context context) {
+        OfflineActionQueue queue = actionQueue;
+        if (queue == null) {
+            synchronized (OfflineSyncPlugin.class) {
+                queue = actionQueue;
+                if (queue == null) {
+                    SharedPreferences prefs = context.getApplicationContext()
+                        .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+                    queue = new OfflineActionQueue(new OfflineActionQueue.Store() {
+                        @Override
+                        public String load() {
+                            return prefs.getString(KEY_PENDING_ACTIONS, "[]");
+                        }
+
+                        @Override
+                        public void save(String snapshot) {
+                            long start = System.nanoTime();
+                            prefs.edit().putString(KEY_PENDING_ACTIONS, snapshot).apply();
+                            PluginMetrics.QUEUE_BYTES_STORED.set(snapshot.length());
+                            PluginMetrics.QUEUE_PERSIST_US.record(PluginMetrics.micros(start));
+                        }
+                    }, QUEUE_WRITER, MAX_SYNC_ATTEMPTS);
+                    actionQueue = queue;
+                }
+            }
+        }
+        return queue;
+    }
+
+    private AttachmentQueue getAttachmentQueue() {
+        return getAttachmentQueue(getContext());
+    }
+
+    static AttachmentQueue getAttachmentQueue(Context context) {
+        AttachmentQueue queue = attachmentQueue;
+        if (queue == null) {
+            synchronized (OfflineSyncPlugin.class) {
+                queue = attachmentQueue;
+                if (queue == null) {
+                    Context appContext = context.getApplicationContext();
+                    SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+                    queue = new AttachmentQueue(new OfflineActionQueue.Store() {
+                        @Override
+                        public String load() {
+                            return prefs.getString(KEY_ATTACHMENTS, "[]");
+                        }
+
+                        @Override
+                        public void save(String snapshot) {
+                            prefs.edit().putString(KEY_ATTACHMENTS, snapshot).apply();
+                        }
+                    }, QUEUE_WRITER, MAX_SYNC_ATTEMPTS);
+                    // Processing that was cut off by process death starts over from the source
+                    for (AttachmentQueue.Attachment attachment : queue.inState(AttachmentQueue.STATE_PROCESSING)) {
+                        processAttachment(appContext, queue, attachment);
+                    }
+                    attachmentQueue = queue;
+                }
+            }
+        }
+        return queue;
+    }
+
+    private BlobStore getAttachmentStore() {
+        return new BlobStore(new File(getContext().getFilesDir(), ATTACHMENTS_DIR), 0);
+    }
+
+    private static void processAttachment(Context appContext, AttachmentQueue queue, AttachmentQueue.Attachment attachment) {
+        ATTACHMENT_PROCESSOR.execute(() -> {
+            File dest = null;
+            try {
+                dest = new BlobStore(new File(appContext.getFilesDir(), ATTACHMENTS_DIR), 0)
+                    .newFile(attachment.ownerType, AttachmentProcessor.EXTENSION);
+                AttachmentProcessor.Result processed = AttachmentProcessor.process(
+                    appContext, attachment.sourcePath, dest, attachment.maxDimension, attachment.quality);
+                if (!queue.markProcessed(attachment.id, dest.getAbsolutePath(), AttachmentProcessor.MIME_TYPE,
+                        processed.bytes, processed.width, processed.height)) {
+                    // Removed while it was being processed
+                    dest.delete();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (dest != null) {
+                    dest.delete();
+                }
+                queue.markProcessingFailed(attachment.id, "Fehler beim Verarbeiten des Anhangs: " + e.getMessage());
+            }
+        });
+    }
+
+    private static Map<String, String> toStringMap(JSObject object) {
+        Map<String, String> map = new HashMap<>();
+        if (object != null) {
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                map.put(key, object.optString(key));
+            }
+        }
+        return map;
+    }
+
+    private static void updateQueueGauges(OfflineActionQueue queue) {
+        PluginMetrics.QUEUE_DEPTH.set(queue.unsyncedCount());
+        PluginMetrics.DEAD_LETTER_DEPTH.set(queue.deadLetterCount());
+    }
+
+    private static void countOutcome(String outcome) {
+        switch (outcome) {
+            case OfflineActionQueue.OUTCOME_SYNCED:
+                PluginMetrics.ACTIONS_SYNCED.inc();
+                break;
+            case OfflineActionQueue.OUTCOME_RETRY:
+                PluginMetrics.ACTIONS_RETRIED.inc();
+                break;
+            case OfflineActionQueue.OUTCOME_DEAD:
+                PluginMetrics.ACTIONS_DEAD_LETTERED.inc();
+                break;
+            case OfflineActionQueue.OUTCOME_STALE:
+                PluginMetrics.STALE_REPORTS.inc();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static JSObject getDeviceInfo() {
+        JSObject device = new JSObject();
+        device.put("manufacturer", Build.MANUFACTURER);
+        device.put("model", Build.MODEL);
+        device.put("sdkInt", Build.VERSION.SDK_INT);
+        device.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        device.put("maxMemory", Runtime.getRuntime().maxMemory());
+        return device;
+    }
+
+    private static JSObject toJSObject(OfflineActionQueue.Action action) throws JSONException {
+        JSObject actionObj = new JSObject();
+        actionObj.put("id", action.id);
+        actionObj.put("actionType", action.actionType);
+        actionObj.put("actionData", new JSObject(action.actionData));
+        actionObj.put("timestamp", action.timestamp);
+        
+        OfflineActionQueue.Status status = action.status.get();
+        actionObj.put("status", OfflineActionQueue.stateName(status.state));
+        actionObj.put("attempts", status.attempts);
+        if (status.state == OfflineActionQueue.STATE_IN_FLIGHT) {
+            actionObj.put("leaseOwner", status.leaseOwner);
+            actionObj.put("leaseExpiresAt", status.leaseExpiresAt);
+        }
+        if (status.lastError != null) {
+            actionObj.put("lastError", status.lastError);
+        }
+        return actionObj;
+    }
+
+    private JSObject toJSObject(AttachmentQueue.Attachment attachment) {
+        JSObject attachmentObj = new JSObject();
+        attachmentObj.put("id", attachment.id);
+        attachmentObj.put("ownerType", attachment.ownerType);
+        attachmentObj.put("ownerId", attachment.ownerId);
+        attachmentObj.put("state", attachment.state);
+        attachmentObj.put("createdAt", attachment.createdAt);
+        attachmentObj.put("attempts", attachment.attempts);
+        if (attachment.path != null) {
+            attachmentObj.put("path", attachment.path);
+            attachmentObj.put("webPath", FileUtils.getPortablePath(getContext(), getBridge().getLocalUrl(), Uri.fromFile(new File(attachment.path))));
+            attachmentObj.put("mimeType", attachment.mimeType);
+            attachmentObj.put("bytes", attachment.bytes);
+            attachmentObj.put("width", attachment.width);
+            attachmentObj.put("height", attachment.height);
+            attachmentObj.put("uploadedBytes", attachment.uploadedBytes);
+        }
+        if (attachment.lastError != null) {
+            attachmentObj.put("lastError", attachment.lastError);
         }
+        return attachmentObj;
     }
-}
\ No newline at end of file
+}
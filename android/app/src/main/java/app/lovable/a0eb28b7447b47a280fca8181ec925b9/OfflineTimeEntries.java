@@ -0,0 +1,402 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operations on the offline time entry list, which is stored as one JSON
+ * array string. Kept free of Android types so it can be benchmarked on the JVM.
+ *
+ * Entries keep their fields at the top level, as before. Sync bookkeeping
+ * lives under {@code sync}: the server row id and the revision tag (the
+ * row's {@code updated_at}) the local edit is based on, the field values at
+ * that revision, the local modification time of each field and any
+ * unresolved conflicts. Entries written before this bookkeeping existed have
+ * no {@code sync} object and are uploaded as new rows.
+ */
+final class OfflineTimeEntries {
+
+    static final String OPERATION_CREATE = "create";
+    static final String OPERATION_UPDATE = "update";
+
+    static final String CONFLICT_FIELDS = "fields";
+    static final String CONFLICT_DELETED = "deletedOnServer";
+
+    static final String RESOLVE_MERGE = "merge";
+    static final String RESOLVE_RECREATE = "recreate";
+    static final String RESOLVE_DISCARD = "discard";
+
+    private static final String KEY_SYNC = "sync";
+
+    /** Result of {@link #merge}: the updated list plus what the caller has to act on. */
+    static final class MergeOutcome {
+        final String entriesJson;
+        final List<JSONObject> uploads;
+        final List<JSONObject> conflicts;
+        final int unchanged;
+
+        MergeOutcome(String entriesJson, List<JSONObject> uploads, List<JSONObject> conflicts, int unchanged) {
+            this.entriesJson = entriesJson;
+            this.uploads = uploads;
+            this.conflicts = conflicts;
+            this.unchanged = unchanged;
+        }
+    }
+
+    private OfflineTimeEntries() {
+    }
+
+    /** Stamps {@code entry} as a new unsynced entry and returns the updated list. */
+    static String append(String entriesJson, JSONObject entry, long now) throws JSONException {
+        return append(entriesJson, entry, null, null, null, now);
+    }
+
+    /**
+     * Like {@link #append(String, JSONObject, long)}, for an offline edit of a
+     * row that already exists on the server. {@code serverId},
+     * {@code baseRevision} and {@code base} describe the server row as it was
+     * when the edit started; pass nulls for a new row.
+     */
+    static String append(String entriesJson, JSONObject entry, String serverId, String baseRevision,
+                         JSONObject base, long now) throws JSONException {
+        JSONArray entriesArray = new JSONArray(entriesJson);
+        
+        JSONObject sync = new JSONObject();
+        sync.put("fieldTimes", stampFields(new JSONObject(), entry, now));
+        if (serverId != null) {
+            sync.put("serverId", serverId);
+            sync.put("baseRevision", baseRevision);
+            sync.put("base", base == null ? null : fields(base));
+        }
+        
+        entry.put("id", now + "_" + (int)(Math.random() * 1000));
+        entry.put("createdAt", now);
+        entry.put("synced", false);
+        entry.put(KEY_SYNC, sync);
+        
+        entriesArray.put(entry);
+        return entriesArray.toString();
+    }
+
+    /**
+     * Applies {@code changes} to an existing entry and marks it unsynced again.
+     * Returns null if there is no entry with that id.
+     */
+    static String update(String entriesJson, String entryId, JSONObject changes, long now) throws JSONException {
+        JSONArray entriesArray = new JSONArray(entriesJson);
+        JSONObject entry = find(entriesArray, entryId);
+        if (entry == null) {
+            return null;
+        }
+        
+        JSONObject sync = syncOf(entry);
+        JSONObject fieldTimes = sync.optJSONObject("fieldTimes");
+        if (fieldTimes == null) {
+            fieldTimes = new JSONObject();
+            sync.put("fieldTimes", fieldTimes);
+        }
+        Iterator<String> keys = changes.keys();
+        while (keys.hasNext()) {
+            String field = keys.next();
+            if (isReserved(field)) {
+                continue;
+            }
+            Object value = changes.get(field);
+            if (!TimeEntryMerge.sameValue(entry.opt(field), value)) {
+                entry.put(field, value);
+                fieldTimes.put(field, now);
+            }
+        }
+        entry.put("synced", false);
+        return entriesArray.toString();
+    }
+
+    static List<JSONObject> unsynced(String entriesJson) throws JSONException {
+        JSONArray entriesArray = new JSONArray(entriesJson);
+        List<JSONObject> result = new ArrayList<>();
+        
+        for (int i = 0; i < entriesArray.length(); i++) {
+            JSONObject entry = entriesArray.getJSONObject(i);
+            if (!entry.getBoolean("synced")) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether any unsynced entry is an edit of a server row, so {@link #merge}
+     * needs the current server rows to tell an unchanged row from a deleted one.
+     */
+    static boolean needsServerRows(String entriesJson) throws JSONException {
+        for (JSONObject entry : unsynced(entriesJson)) {
+            JSONObject sync = entry.optJSONObject(KEY_SYNC);
+            if (sync != null && sync.has("serverId")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges every unsynced entry with the server rows in {@code serverRows}
+     * (keyed by server id, each {@code {revision, modifiedAt, data}}), so only
+     * the rows for pending entries have to be fetched. A pending edit whose
+     * row is missing from {@code serverRows} is reported as deleted on the server.
+     *
+     * Entries whose server row has not moved since the edit started are
+     * uploaded as they are. Otherwise the server's changes are merged in field
+     * by field and the entry is rebased onto the new revision; entries that
+     * end up identical to the server row are marked synced without an upload.
+     * Uploads carry the revision they were merged against, so the caller can
+     * make the write conditional on it. Only fields that {@code rules} leave
+     * to the user, and rows deleted on the server, come back as conflicts.
+     */
+    static MergeOutcome merge(String entriesJson, Map<String, JSONObject> serverRows,
+                              TimeEntryMerge.Rules rules, long now) throws JSONException {
+        JSONArray entriesArray = new JSONArray(entriesJson);
+        List<JSONObject> uploads = new ArrayList<>();
+        List<JSONObject> conflicts = new ArrayList<>();
+        int unchanged = 0;
+        
+        for (int i = 0; i < entriesArray.length(); i++) {
+            JSONObject entry = entriesArray.getJSONObject(i);
+            if (entry.getBoolean("synced")) {
+                continue;
+            }
+            JSONObject sync = syncOf(entry);
+            String serverId = sync.optString("serverId", null);
+            if (serverId == null) {
+                uploads.add(upload(entry, OPERATION_CREATE, null, null));
+                continue;
+            }
+            
+            JSONObject serverRow = serverRows.get(serverId);
+            if (serverRow == null) {
+                conflicts.add(conflict(entry, serverId, null, CONFLICT_DELETED, null));
+                continue;
+            }
+            String revision = serverRow.getString("revision");
+            JSONObject stored = sync.optJSONObject("conflicts");
+            if (revision.equals(sync.optString("baseRevision", null))) {
+                // Nobody wrote the row since this edit started, or since the last rebase
+                if (stored != null) {
+                    conflicts.add(conflict(entry, serverId, revision, CONFLICT_FIELDS, stored));
+                } else {
+                    uploads.add(upload(entry, OPERATION_UPDATE, serverId, revision));
+                }
+                continue;
+            }
+            
+            // Server rows carry their own id and timestamps; only data fields take part
+            JSONObject serverData = fields(serverRow.getJSONObject("data"));
+            TimeEntryMerge.Result result = TimeEntryMerge.merge(
+                sync.optJSONObject("base"),
+                fields(entry),
+                sync.optJSONObject("fieldTimes"),
+                entry.optLong("createdAt", now),
+                serverData,
+                serverRow.optLong("modifiedAt", 0),
+                rules
+            );
+            
+            replaceFields(entry, result.merged);
+            sync.put("base", serverData);
+            sync.put("baseRevision", revision);
+            sync.remove("conflicts");
+            if (result.hasConflicts()) {
+                sync.put("conflicts", result.conflicts);
+                conflicts.add(conflict(entry, serverId, revision, CONFLICT_FIELDS, result.conflicts));
+            } else if (result.changesServer) {
+                uploads.add(upload(entry, OPERATION_UPDATE, serverId, revision));
+            } else {
+                entry.put("synced", true);
+                entry.put("syncedAt", now);
+                unchanged++;
+            }
+        }
+        return new MergeOutcome(entriesArray.toString(), uploads, conflicts, unchanged);
+    }
+
+    /**
+     * Records a successful upload of {@code uploaded}, the {@code data} of an
+     * upload returned by {@link #merge}, which the server stored as
+     * {@code revision}. The uploaded data becomes the base for the next merge.
+     * The entry is only marked synced if it still holds exactly that data; if
+     * it was edited while the upload was in flight it stays unsynced, rebased
+     * onto the new revision, so the next merge uploads the newer edit.
+     * Returns null for an unknown id.
+     */
+    static String markSynced(String entriesJson, String entryId, String serverId, String revision,
+                             JSONObject uploaded, long now) throws JSONException {
+        JSONArray entriesArray = new JSONArray(entriesJson);
+        JSONObject entry = find(entriesArray, entryId);
+        if (entry == null) {
+            return null;
+        }
+        
+        JSONObject uploadedFields = fields(uploaded);
+        JSONObject sync = syncOf(entry);
+        sync.put("serverId", serverId);
+        sync.put("baseRevision", revision);
+        sync.put("base", uploadedFields);
+        sync.remove("conflicts");
+        if (TimeEntryMerge.sameFields(fields(entry), uploadedFields)) {
+            entry.put("synced", true);
+            entry.put("syncedAt", now);
+        } else {
+            entry.put("synced", false);
+        }
+        return entriesArray.toString();
+    }
+
+    /** Whether the entry with {@code entryId} exists and is synced. */
+    static boolean isSynced(String entriesJson, String entryId) throws JSONException {
+        JSONObject entry = find(new JSONArray(entriesJson), entryId);
+        return entry != null && entry.optBoolean("synced");
+    }
+
+    /**
+     * Settles a conflict reported by {@link #merge}. {@link #RESOLVE_MERGE}
+     * takes {@code values} for the conflicting fields, keeping the local value
+     * for any field not given; {@link #RESOLVE_RECREATE} uploads the entry as
+     * a new row; {@link #RESOLVE_DISCARD} drops the local edit. Returns null for
+     * an unknown id.
+     */
+    static String resolveConflict(String entriesJson, String entryId, String action, JSONObject values, long now) throws JSONException {
+        JSONArray entriesArray = new JSONArray(entriesJson);
+        JSONObject entry = find(entriesArray, entryId);
+        if (entry == null) {
+            return null;
+        }
+        
+        JSONObject sync = syncOf(entry);
+        if (RESOLVE_DISCARD.equals(action)) {
+            JSONArray remaining = new JSONArray();
+            for (int i = 0; i < entriesArray.length(); i++) {
+                if (entriesArray.getJSONObject(i) != entry) {
+                    remaining.put(entriesArray.get(i));
+                }
+            }
+            return remaining.toString();
+        } else if (RESOLVE_RECREATE.equals(action)) {
+            sync.remove("serverId");
+            sync.remove("baseRevision");
+            sync.remove("base");
+        } else {
+            JSONObject stored = sync.optJSONObject("conflicts");
+            JSONObject fieldTimes = sync.optJSONObject("fieldTimes");
+            if (stored != null && values != null) {
+                Iterator<String> fields = stored.keys();
+                while (fields.hasNext()) {
+                    String field = fields.next();
+                    if (values.has(field)) {
+                        entry.put(field, values.get(field));
+                        if (fieldTimes != null) {
+                            fieldTimes.put(field, now);
+                        }
+                    }
+                }
+            }
+        }
+        sync.remove("conflicts");
+        entry.put("synced", false);
+        return entriesArray.toString();
+    }
+
+    private static JSONObject upload(JSONObject entry, String operation, String serverId, String revision) throws JSONException {
+        JSONObject upload = new JSONObject();
+        upload.put("entryId", entry.getString("id"));
+        upload.put("operation", operation);
+        upload.put("serverId", serverId);
+        upload.put("expectedRevision", revision);
+        upload.put("data", fields(entry));
+        return upload;
+    }
+
+    private static JSONObject conflict(JSONObject entry, String serverId, String revision, String reason,
+                                       JSONObject fieldConflicts) throws JSONException {
+        JSONObject conflict = new JSONObject();
+        conflict.put("entryId", entry.getString("id"));
+        conflict.put("serverId", serverId);
+        conflict.put("revision", revision);
+        conflict.put("reason", reason);
+        conflict.put("fields", fieldConflicts);
+        return conflict;
+    }
+
+    /** The entry's data fields, without id, timestamps and sync bookkeeping. */
+    static JSONObject fields(JSONObject entry) throws JSONException {
+        JSONObject fields = new JSONObject();
+        Iterator<String> keys = entry.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!isReserved(key)) {
+                fields.put(key, entry.get(key));
+            }
+        }
+        return fields;
+    }
+
+    private static void replaceFields(JSONObject entry, JSONObject merged) throws JSONException {
+        List<String> stale = new ArrayList<>();
+        Iterator<String> keys = entry.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!isReserved(key) && !merged.has(key)) {
+                stale.add(key);
+            }
+        }
+        for (String key : stale) {
+            entry.remove(key);
+        }
+        Iterator<String> fields = merged.keys();
+        while (fields.hasNext()) {
+            String field = fields.next();
+            if (!isReserved(field)) {
+                entry.put(field, merged.get(field));
+            }
+        }
+    }
+
+    private static JSONObject stampFields(JSONObject fieldTimes, JSONObject entry, long now) throws JSONException {
+        Iterator<String> keys = entry.keys();
+        while (keys.hasNext()) {
+            String field = keys.next();
+            if (!isReserved(field)) {
+                fieldTimes.put(field, now);
+            }
+        }
+        return fieldTimes;
+    }
+
+    private static JSONObject syncOf(JSONObject entry) throws JSONException {
+        JSONObject sync = entry.optJSONObject(KEY_SYNC);
+        if (sync == null) {
+            sync = new JSONObject();
+            entry.put(KEY_SYNC, sync);
+        }
+        return sync;
+    }
+
+    private static JSONObject find(JSONArray entriesArray, String entryId) throws JSONException {
+        for (int i = 0; i < entriesArray.length(); i++) {
+            JSONObject entry = entriesArray.getJSONObject(i);
+            if (entryId.equals(entry.optString("id"))) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isReserved(String key) {
+        return key.equals("id") || key.equals("createdAt") || key.equals("synced")
+            || key.equals("syncedAt") || key.equals(KEY_SYNC);
+    }
+}
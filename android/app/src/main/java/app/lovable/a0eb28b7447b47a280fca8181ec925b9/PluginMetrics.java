@@ -0,0 +1,259 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process metrics for the native plugins.
+ *
+ * Every metric is created once as a static field, so recording on the hot path
+ * is a handful of atomic operations on preallocated storage: no map lookups,
+ * no boxing and no allocation. Only {@link #toJson()} allocates.
+ */
+final class PluginMetrics {
+
+    private static final List<Metric> ALL = new ArrayList<>();
+
+    // Startup
+    static final Histogram BOOT_PREFETCH_US = histogram("boot.prefetch", "us");
+    static final Histogram GET_BOOT_STATE_US = histogram("boot.getBootState", "us");
+
+    // OfflineSyncPlugin
+    static final Histogram ADD_OFFLINE_ACTION_US = histogram("offlineSync.addOfflineAction", "us");
+    static final Histogram GET_PENDING_ACTIONS_US = histogram("offlineSync.getPendingActions", "us");
+    static final Histogram CLAIM_PENDING_ACTIONS_US = histogram("offlineSync.claimPendingActions", "us");
+    static final Histogram COMPLETE_ACTIONS_US = histogram("offlineSync.completeActions", "us");
+    static final Histogram QUEUE_PERSIST_US = histogram("offlineSync.queuePersist", "us");
+    static final Histogram SYNC_BATCH_SIZE = histogram("offlineSync.syncBatchSize", "actions");
+    static final Counter ACTIONS_ENQUEUED = counter("offlineSync.actionsEnqueued");
+    static final Counter ACTIONS_SYNCED = counter("offlineSync.actionsSynced");
+    static final Counter ACTIONS_RETRIED = counter("offlineSync.actionsRetried");
+    static final Counter ACTIONS_DEAD_LETTERED = counter("offlineSync.actionsDeadLettered");
+    static final Counter STALE_REPORTS = counter("offlineSync.staleReports");
+    static final Counter ACTIONS_UNREADABLE = counter("offlineSync.actionsUnreadable");
+    static final Gauge QUEUE_DEPTH = gauge("offlineSync.queueDepth", "actions");
+    static final Gauge DEAD_LETTER_DEPTH = gauge("offlineSync.deadLetterDepth", "actions");
+    static final Gauge QUEUE_BYTES_STORED = gauge("offlineSync.queueBytesStored", "bytes");
+    static final Histogram ATTACHMENT_PROCESS_US = histogram("offlineSync.attachmentProcess", "us");
+    static final Histogram ATTACHMENT_BYTES = histogram("offlineSync.attachmentBytes", "bytes");
+    static final Histogram ATTACHMENT_CHUNK_US = histogram("offlineSync.attachmentChunk", "us");
+    static final Counter ATTACHMENT_BYTES_UPLOADED = counter("offlineSync.attachmentBytesUploaded");
+    static final Counter ATTACHMENTS_UPLOADED = counter("offlineSync.attachmentsUploaded");
+    static final Gauge ATTACHMENT_DEPTH = gauge("offlineSync.attachmentDepth", "attachments");
+
+    // DeliveryNotesPlugin
+    static final Histogram SIGN_DELIVERY_NOTE_US = histogram("deliveryNotes.signDeliveryNote", "us");
+    static final Histogram SIGNATURE_RENDER_US = histogram("deliveryNotes.signatureRender", "us");
+    static final Histogram SIGNATURE_ENCODE_US = histogram("deliveryNotes.signatureEncode", "us");
+    static final Histogram SIGNATURE_BYTES = histogram("deliveryNotes.signatureBytes", "bytes");
+    static final Counter SIGNATURES_SAVED = counter("deliveryNotes.signaturesSaved");
+
+    // TimeTrackingPlugin
+    static final Histogram GET_ACTIVE_TIME_TRACKING_US = histogram("timeTracking.getActiveTimeTracking", "us");
+
+    private static final long STARTED_AT = System.currentTimeMillis();
+
+    private PluginMetrics() {
+    }
+
+    /** Microseconds elapsed since {@code startNanos}, taken from {@link System#nanoTime()}. */
+    static long micros(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000L;
+    }
+
+    static JSONObject toJson() throws JSONException {
+        JSONObject histograms = new JSONObject();
+        JSONObject counters = new JSONObject();
+        JSONObject gauges = new JSONObject();
+        synchronized (ALL) {
+            for (Metric metric : ALL) {
+                if (metric instanceof Histogram) {
+                    histograms.put(metric.name, ((Histogram) metric).toJson());
+                } else if (metric instanceof Counter) {
+                    counters.put(metric.name, ((Counter) metric).get());
+                } else {
+                    Gauge gauge = (Gauge) metric;
+                    gauges.put(metric.name, new JSONObject().put("value", gauge.get()).put("unit", gauge.unit));
+                }
+            }
+        }
+        JSONObject result = new JSONObject();
+        result.put("startedAt", STARTED_AT);
+        result.put("capturedAt", System.currentTimeMillis());
+        result.put("histograms", histograms);
+        result.put("counters", counters);
+        result.put("gauges", gauges);
+        return result;
+    }
+
+    /** Resets histograms and counters. Gauges describe current state and are kept. */
+    static void reset() {
+        synchronized (ALL) {
+            for (Metric metric : ALL) {
+                metric.reset();
+            }
+        }
+    }
+
+    private static Histogram histogram(String name, String unit) {
+        return register(new Histogram(name, unit));
+    }
+
+    private static Counter counter(String name) {
+        return register(new Counter(name));
+    }
+
+    private static Gauge gauge(String name, String unit) {
+        return register(new Gauge(name, unit));
+    }
+
+    private static <T extends Metric> T register(T metric) {
+        synchronized (ALL) {
+            ALL.add(metric);
+        }
+        return metric;
+    }
+
+    abstract static class Metric {
+        final String name;
+
+        Metric(String name) {
+            this.name = name;
+        }
+
+        void reset() {
+        }
+    }
+
+    static final class Counter extends Metric {
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            super(name);
+        }
+
+        void inc() {
+            value.incrementAndGet();
+        }
+
+        void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        long get() {
+            return value.get();
+        }
+
+        @Override
+        void reset() {
+            value.set(0);
+        }
+    }
+
+    static final class Gauge extends Metric {
+        final String unit;
+        private final AtomicLong value = new AtomicLong();
+
+        Gauge(String name, String unit) {
+            super(name);
+            this.unit = unit;
+        }
+
+        void set(long newValue) {
+            value.set(newValue);
+        }
+
+        long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Histogram with power-of-two buckets: bucket {@code i} counts values in
+     * [2^(i-1), 2^i), bucket 0 counts zero. Percentiles are reported as the
+     * upper bound of the bucket they fall in, which is accurate to within 2x.
+     */
+    static final class Histogram extends Metric {
+        static final int BUCKETS = 40;
+
+        final String unit;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name, String unit) {
+            super(name);
+            this.unit = unit;
+        }
+
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long currentMax;
+            while (value > (currentMax = max.get())) {
+                if (max.compareAndSet(currentMax, value)) {
+                    break;
+                }
+            }
+        }
+
+        long count() {
+            return count.get();
+        }
+
+        long percentile(double quantile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        JSONObject toJson() throws JSONException {
+            long total = count.get();
+            JSONObject json = new JSONObject();
+            json.put("unit", unit);
+            json.put("count", total);
+            json.put("sum", sum.get());
+            json.put("mean", total == 0 ? 0 : sum.get() / total);
+            json.put("max", max.get());
+            json.put("p50", percentile(0.50));
+            json.put("p90", percentile(0.90));
+            json.put("p99", percentile(0.99));
+            return json;
+        }
+
+        @Override
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket == 0 ? 0 : (1L << bucket) - 1;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Minimal tus 1.0 client (https://tus.io/protocols/resumable-upload) as
+ * spoken by Supabase Storage. Files are sent in fixed-size chunks read
+ * straight from disk into one reused buffer; after every chunk the server's
+ * offset is reported so an interrupted upload resumes where it stopped.
+ */
+final class ResumableUploader {
+
+    static final String TUS_VERSION = "1.0.0";
+
+    interface Progress {
+        void onProgress(long uploadedBytes);
+    }
+
+    /** Non-2xx answer from the upload server. */
+    static final class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpStatusException(int status, String message) {
+            super("HTTP " + status + ": " + message);
+            this.status = status;
+        }
+
+        /** Server errors, rate limits and lock conflicts are worth retrying; other 4xx are not. */
+        boolean isRetryable() {
+            return status >= 500 || status == 408 || status == 409 || status == 423 || status == 429;
+        }
+    }
+
+    private final int chunkSize;
+    private final int timeoutMs;
+    private final byte[] buffer;
+
+    ResumableUploader(int chunkSize, int timeoutMs) {
+        this.chunkSize = chunkSize;
+        this.timeoutMs = timeoutMs;
+        this.buffer = new byte[chunkSize];
+    }
+
+    /** Creates an upload resource for {@code length} bytes and returns its URL. */
+    String create(String endpoint, Map<String, String> headers, long length, Map<String, String> metadata) throws IOException {
+        HttpURLConnection connection = open(endpoint, "POST", headers);
+        try {
+            connection.setRequestProperty("Upload-Length", String.valueOf(length));
+            if (metadata != null && !metadata.isEmpty()) {
+                connection.setRequestProperty("Upload-Metadata", encodeMetadata(metadata));
+            }
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(0);
+            connection.getOutputStream().close();
+
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_CREATED) {
+                throw new HttpStatusException(status, "Upload konnte nicht angelegt werden");
+            }
+            String location = connection.getHeaderField("Location");
+            if (location == null) {
+                throw new IOException("Antwort ohne Location-Header");
+            }
+            return new URL(new URL(endpoint), location).toString();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /** Returns the offset the server has stored, or -1 if the upload no longer exists. */
+    long fetchOffset(String uploadUrl, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = open(uploadUrl, "HEAD", headers);
+        try {
+            connection.setRequestProperty("Cache-Control", "no-store");
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE
+                    || status == HttpURLConnection.HTTP_FORBIDDEN) {
+                return -1;
+            }
+            if (status / 100 != 2) {
+                throw new HttpStatusException(status, "Upload-Status konnte nicht abgefragt werden");
+            }
+            return parseOffset(connection);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /** Sends {@code file} from {@code offset} to the end and returns the final server offset. */
+    long upload(File file, String uploadUrl, Map<String, String> headers, long offset, Progress progress) throws IOException {
+        long length = file.length();
+        try (RandomAccessFile source = new RandomAccessFile(file, "r")) {
+            while (offset < length) {
+                int count = (int) Math.min(chunkSize, length - offset);
+                source.seek(offset);
+                source.readFully(buffer, 0, count);
+
+                long start = System.nanoTime();
+                offset = sendChunk(uploadUrl, headers, offset, count);
+                PluginMetrics.ATTACHMENT_CHUNK_US.record(PluginMetrics.micros(start));
+                PluginMetrics.ATTACHMENT_BYTES_UPLOADED.add(count);
+                progress.onProgress(offset);
+            }
+        }
+        return offset;
+    }
+
+    private long sendChunk(String uploadUrl, Map<String, String> headers, long offset, int count) throws IOException {
+        // HttpURLConnection has no PATCH on every platform; tus servers accept the override header
+        HttpURLConnection connection = open(uploadUrl, "POST", headers);
+        try {
+            connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+            connection.setRequestProperty("Content-Type", "application/offset+octet-stream");
+            connection.setRequestProperty("Upload-Offset", String.valueOf(offset));
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(count);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(buffer, 0, count);
+            }
+
+            int status = connection.getResponseCode();
+            if (status / 100 != 2) {
+                throw new HttpStatusException(status, "Teil-Upload fehlgeschlagen");
+            }
+            return parseOffset(connection);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /** Whether {@code url} is an absolute http(s) URL that {@link HttpURLConnection} can open. */
+    static boolean isHttpUrl(String url) {
+        try {
+            String protocol = new URL(url).getProtocol();
+            return "http".equals(protocol) || "https".equals(protocol);
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
+    private HttpURLConnection open(String url, String method, Map<String, String> headers) throws IOException {
+        URLConnection opened = new URL(url).openConnection();
+        if (!(opened instanceof HttpURLConnection)) {
+            throw new IOException("Keine HTTP-URL: " + url);
+        }
+        HttpURLConnection connection = (HttpURLConnection) opened;
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(timeoutMs);
+        connection.setReadTimeout(timeoutMs);
+        connection.setUseCaches(false);
+        connection.setRequestProperty("Tus-Resumable", TUS_VERSION);
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        return connection;
+    }
+
+    private static long parseOffset(HttpURLConnection connection) throws IOException {
+        String offset = connection.getHeaderField("Upload-Offset");
+        if (offset == null) {
+            throw new IOException("Antwort ohne Upload-Offset-Header");
+        }
+        try {
+            return Long.parseLong(offset.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Ungültiger Upload-Offset: " + offset);
+        }
+    }
+
+    static String encodeMetadata(Map<String, String> metadata) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(entry.getKey()).append(' ').append(base64(entry.getValue().getBytes(StandardCharsets.UTF_8)));
+        }
+        return sb.toString();
+    }
+
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    // java.util.Base64 needs API 26 and android.util.Base64 is not available on the JVM
+    private static String base64(byte[] data) {
+        StringBuilder sb = new StringBuilder((data.length + 2) / 3 * 4);
+        for (int i = 0; i < data.length; i += 3) {
+            int b0 = data[i] & 0xff;
+            int b1 = i + 1 < data.length ? data[i + 1] & 0xff : 0;
+            int b2 = i + 2 < data.length ? data[i + 2] & 0xff : 0;
+            sb.append(BASE64[b0 >> 2]);
+            sb.append(BASE64[((b0 & 0x03) << 4) | (b1 >> 4)]);
+            sb.append(i + 1 < data.length ? BASE64[((b1 & 0x0f) << 2) | (b2 >> 6)] : '=');
+            sb.append(i + 2 < data.length ? BASE64[b2 & 0x3f] : '=');
+        }
+        return sb.toString();
+    }
+}
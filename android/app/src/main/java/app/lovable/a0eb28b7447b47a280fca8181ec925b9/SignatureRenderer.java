@@ -0,0 +1,95 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Turns signature stroke data into a PNG.
+ *
+ * Parsing is kept separate from drawing so it can be measured on a plain JVM;
+ * drawing and encoding need the Android graphics stack.
+ */
+final class SignatureRenderer {
+
+    static final int DEFAULT_WIDTH = 400;
+    static final int DEFAULT_HEIGHT = 200;
+
+    private SignatureRenderer() {
+    }
+
+    /**
+     * Flattens {@code [{points: [{x, y}, ...]}, ...]} into one
+     * {@code [x0, y0, x1, y1, ...]} array per stroke. Strokes with fewer than
+     * two points cannot be drawn and are dropped.
+     */
+    static float[][] parsePaths(JSONArray paths) throws JSONException {
+        float[][] strokes = new float[paths.length()][];
+        int count = 0;
+        for (int i = 0; i < paths.length(); i++) {
+            JSONArray points = paths.getJSONObject(i).optJSONArray("points");
+            if (points == null || points.length() < 2) {
+                continue;
+            }
+            float[] coords = new float[points.length() * 2];
+            for (int j = 0; j < points.length(); j++) {
+                JSONObject point = points.getJSONObject(j);
+                coords[j * 2] = (float) point.getDouble("x");
+                coords[j * 2 + 1] = (float) point.getDouble("y");
+            }
+            strokes[count++] = coords;
+        }
+        if (count == strokes.length) {
+            return strokes;
+        }
+        float[][] trimmed = new float[count][];
+        System.arraycopy(strokes, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    static Bitmap render(float[][] strokes, int width, int height) {
+        long start = System.nanoTime();
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.WHITE);
+
+        Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setColor(Color.BLACK);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(3f);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+
+        Path path = new Path();
+        for (float[] coords : strokes) {
+            path.reset();
+            path.moveTo(coords[0], coords[1]);
+            for (int j = 2; j < coords.length; j += 2) {
+                path.lineTo(coords[j], coords[j + 1]);
+            }
+            canvas.drawPath(path, paint);
+        }
+
+        PluginMetrics.SIGNATURE_RENDER_US.record(PluginMetrics.micros(start));
+        return bitmap;
+    }
+
+    static byte[] encodePng(Bitmap bitmap) {
+        long start = System.nanoTime();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
+        byte[] png = baos.toByteArray();
+        PluginMetrics.SIGNATURE_ENCODE_US.record(PluginMetrics.micros(start));
+        PluginMetrics.SIGNATURE_BYTES.record(png.length);
+        return png;
+    }
+}
@@ -0,0 +1,174 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Three-way, field-level merge of an offline-edited time entry with the
+ * server's current row.
+ *
+ * A field changed on only one side takes that side's value. A field changed
+ * on both sides to different values is settled by the rule configured for
+ * it: {@link #RULE_LATEST} (last writer wins, comparing the local edit time of
+ * the field with the server row's modification time), {@link #RULE_LOCAL},
+ * {@link #RULE_SERVER} or {@link #RULE_MANUAL}, which reports the field as a
+ * conflict for the user to decide.
+ */
+final class TimeEntryMerge {
+
+    static final String RULE_LATEST = "latest";
+    static final String RULE_LOCAL = "local";
+    static final String RULE_SERVER = "server";
+    static final String RULE_MANUAL = "manual";
+
+    static final class Rules {
+        final String defaultRule;
+        final Map<String, String> byField;
+
+        Rules(String defaultRule, Map<String, String> byField) {
+            this.defaultRule = defaultRule;
+            this.byField = byField;
+        }
+
+        static Rules lastWriterWins() {
+            return new Rules(RULE_LATEST, new HashMap<String, String>());
+        }
+
+        String forField(String field) {
+            String rule = byField.get(field);
+            return rule != null ? rule : defaultRule;
+        }
+
+        static boolean isValid(String rule) {
+            return RULE_LATEST.equals(rule) || RULE_LOCAL.equals(rule)
+                || RULE_SERVER.equals(rule) || RULE_MANUAL.equals(rule);
+        }
+    }
+
+    static final class Result {
+        /** Server row with the local changes applied; conflicting fields keep the local value. */
+        final JSONObject merged;
+        /** {@code field -> {base, local, server}} for fields left to the user. */
+        final JSONObject conflicts;
+        /** Whether {@link #merged} differs from the server row and has to be uploaded. */
+        final boolean changesServer;
+
+        Result(JSONObject merged, JSONObject conflicts, boolean changesServer) {
+            this.merged = merged;
+            this.conflicts = conflicts;
+            this.changesServer = changesServer;
+        }
+
+        boolean hasConflicts() {
+            return conflicts.length() > 0;
+        }
+    }
+
+    private TimeEntryMerge() {
+    }
+
+    /**
+     * @param base          the server row the local edit started from, or null if
+     *                      unknown, in which case every differing field counts as
+     *                      changed on both sides
+     * @param fieldTimes    local modification time per field
+     * @param localTime     fallback modification time for fields without one
+     */
+    static Result merge(JSONObject base, JSONObject local, JSONObject fieldTimes, long localTime,
+                        JSONObject server, long serverModifiedAt, Rules rules) throws JSONException {
+        Set<String> fields = new LinkedHashSet<>();
+        addKeys(fields, server);
+        addKeys(fields, local);
+
+        JSONObject merged = new JSONObject();
+        JSONObject conflicts = new JSONObject();
+        boolean changesServer = false;
+        for (String field : fields) {
+            Object serverValue = server.opt(field);
+            Object localValue = local.opt(field);
+            Object baseValue = base == null ? null : base.opt(field);
+
+            boolean localChanged = local.has(field) && (base == null || !sameValue(localValue, baseValue));
+            boolean serverChanged = base == null || !sameValue(serverValue, baseValue);
+
+            Object value;
+            if (!localChanged || sameValue(localValue, serverValue)) {
+                value = serverValue;
+            } else if (!serverChanged) {
+                value = localValue;
+            } else {
+                String rule = rules.forField(field);
+                if (RULE_MANUAL.equals(rule)) {
+                    conflicts.put(field, new JSONObject()
+                        .put("base", orNull(baseValue))
+                        .put("local", orNull(localValue))
+                        .put("server", orNull(serverValue)));
+                    value = localValue;
+                } else if (RULE_LOCAL.equals(rule)) {
+                    value = localValue;
+                } else if (RULE_SERVER.equals(rule)) {
+                    value = serverValue;
+                } else {
+                    // Ties go to the server so every device resolves them the same way
+                    long localModifiedAt = fieldTimes == null ? localTime : fieldTimes.optLong(field, localTime);
+                    value = localModifiedAt > serverModifiedAt ? localValue : serverValue;
+                }
+            }
+
+            if (value != null) {
+                merged.put(field, value);
+            }
+            if (!sameValue(value, serverValue)) {
+                changesServer = true;
+            }
+        }
+        return new Result(merged, conflicts, changesServer);
+    }
+
+    /** JSON value equality that treats 5, 5L and 5.0 as equal and missing as null. */
+    static boolean sameValue(Object a, Object b) {
+        if (a == JSONObject.NULL) {
+            a = null;
+        }
+        if (b == JSONObject.NULL) {
+            b = null;
+        }
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+        }
+        return a.toString().equals(b.toString());
+    }
+
+    /** Whether both objects have the same fields with {@link #sameValue} values. */
+    static boolean sameFields(JSONObject a, JSONObject b) {
+        Set<String> fields = new LinkedHashSet<>();
+        addKeys(fields, a);
+        addKeys(fields, b);
+        for (String field : fields) {
+            if (!sameValue(a.opt(field), b.opt(field))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object orNull(Object value) {
+        return value == null ? JSONObject.NULL : value;
+    }
+
+    private static void addKeys(Set<String> fields, JSONObject object) {
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            fields.add(keys.next());
+        }
+    }
+}
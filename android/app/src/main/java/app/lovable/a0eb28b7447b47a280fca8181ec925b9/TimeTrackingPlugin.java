@@ -117,7 +117,13 @@ public class TimeTrackingPlugin extends Plugin {
 
     @PluginMethod
     public void getActiveTimeTracking(PluginCall call) {
-        SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long start = System.nanoTime();
+        call.resolve(readActiveTimeTracking(getContext()));
+        PluginMetrics.GET_ACTIVE_TIME_TRACKING_US.record(PluginMetrics.micros(start));
+    }
+
+    static JSObject readActiveTimeTracking(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         
         JSObject result = new JSObject();
         
@@ -140,7 +146,7 @@ public class TimeTrackingPlugin extends Plugin {
             result.put("active", false);
         }
         
-        call.resolve(result);
+        return result;
     }
 
     @PluginMethod
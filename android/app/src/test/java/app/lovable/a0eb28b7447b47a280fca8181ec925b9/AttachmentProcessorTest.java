@@ -0,0 +1,26 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AttachmentProcessorTest {
+
+    @Test
+    public void sampleSizeNeverDecodesBelowTarget() {
+        assertEquals(1, AttachmentProcessor.sampleSize(1200, 900, 1600));
+        assertEquals(1, AttachmentProcessor.sampleSize(3000, 2000, 1600));
+        assertEquals(2, AttachmentProcessor.sampleSize(4000, 3000, 1600));
+        assertEquals(4, AttachmentProcessor.sampleSize(3000, 8000, 1600));
+        assertEquals(8, AttachmentProcessor.sampleSize(4000, 3000, 500));
+    }
+
+    @Test
+    public void targetSizeFitsLongerSideAndKeepsAspectRatio() {
+        assertArrayEquals(new int[] { 1600, 1200 }, AttachmentProcessor.targetSize(2000, 1500, 1600));
+        assertArrayEquals(new int[] { 900, 1600 }, AttachmentProcessor.targetSize(1800, 3200, 1600));
+        assertArrayEquals(new int[] { 800, 600 }, AttachmentProcessor.targetSize(800, 600, 1600));
+        assertArrayEquals(new int[] { 1600, 1 }, AttachmentProcessor.targetSize(10_000, 2, 1600));
+    }
+}
@@ -0,0 +1,299 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AttachmentQueueTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int CHUNK_SIZE = 1024;
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeTusServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new FakeTusServer();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void interruptedUploadResumesAtServerOffset() throws Exception {
+        byte[] content = randomBytes(10_000);
+        AttachmentQueue queue = newQueue(new InMemoryStore(null));
+        String id = addReady(queue, content);
+        server.failPatchNumber = 4;
+
+        String first = queue.upload(id, newUploader(), server.endpoint(), NO_HEADERS, null, bytes -> { });
+
+        assertEquals(AttachmentQueue.OUTCOME_RETRY, first);
+        AttachmentQueue.Attachment afterFailure = queue.get(id);
+        assertEquals(AttachmentQueue.STATE_READY, afterFailure.state);
+        assertEquals(3 * CHUNK_SIZE, afterFailure.uploadedBytes);
+        assertNotNull(afterFailure.uploadUrl);
+
+        String second = queue.upload(id, newUploader(), server.endpoint(), NO_HEADERS, null, bytes -> { });
+
+        assertEquals(AttachmentQueue.OUTCOME_UPLOADED, second);
+        assertEquals(AttachmentQueue.STATE_UPLOADED, queue.get(id).state);
+        assertEquals(1, server.creates.get());
+        assertArrayEquals(content, server.received(queue.get(id).uploadUrl));
+    }
+
+    @Test
+    public void progressSurvivesRestart() throws Exception {
+        byte[] content = randomBytes(5_000);
+        InMemoryStore store = new InMemoryStore(null);
+        AttachmentQueue queue = newQueue(store);
+        String id = addReady(queue, content);
+        server.failPatchNumber = 2;
+        queue.upload(id, newUploader(), server.endpoint(), NO_HEADERS, null, bytes -> { });
+
+        AttachmentQueue restored = newQueue(new InMemoryStore(store.saved));
+        AttachmentQueue.Attachment attachment = restored.get(id);
+        assertEquals(AttachmentQueue.STATE_READY, attachment.state);
+        assertEquals(CHUNK_SIZE, attachment.uploadedBytes);
+
+        assertEquals(AttachmentQueue.OUTCOME_UPLOADED,
+            restored.upload(id, newUploader(), server.endpoint(), NO_HEADERS, null, bytes -> { }));
+        assertArrayEquals(content, server.received(restored.get(id).uploadUrl));
+    }
+
+    @Test
+    public void expiredServerUploadStartsOver() throws Exception {
+        byte[] content = randomBytes(3_000);
+        AttachmentQueue queue = newQueue(new InMemoryStore(null));
+        String id = addReady(queue, content);
+        server.failPatchNumber = 2;
+        queue.upload(id, newUploader(), server.endpoint(), NO_HEADERS, null, bytes -> { });
+        server.uploads.clear();
+
+        assertEquals(AttachmentQueue.OUTCOME_UPLOADED,
+            queue.upload(id, newUploader(), server.endpoint(), NO_HEADERS, null, bytes -> { }));
+
+        assertEquals(2, server.creates.get());
+        assertArrayEquals(content, server.received(queue.get(id).uploadUrl));
+    }
+
+    @Test
+    public void clientErrorFailsWithoutRetryUntilRetried() throws Exception {
+        AttachmentQueue queue = newQueue(new InMemoryStore(null));
+        String id = addReady(queue, randomBytes(100));
+        server.createStatus = 400;
+
+        assertEquals(AttachmentQueue.OUTCOME_FAILED,
+            queue.upload(id, newUploader(), server.endpoint(), NO_HEADERS, null, bytes -> { }));
+        assertEquals(AttachmentQueue.STATE_FAILED, queue.get(id).state);
+        assertEquals(0, queue.pendingCount());
+
+        assertTrue(queue.retry(id));
+        assertEquals(AttachmentQueue.STATE_READY, queue.get(id).state);
+        assertEquals(0, queue.get(id).attempts);
+    }
+
+    @Test
+    public void retryableErrorsFailAfterMaxAttempts() throws Exception {
+        AttachmentQueue queue = newQueue(new InMemoryStore(null));
+        String id = addReady(queue, randomBytes(100));
+        server.createStatus = 503;
+
+        for (int attempt = 1; attempt < MAX_ATTEMPTS; attempt++) {
+            assertEquals(AttachmentQueue.OUTCOME_RETRY,
+                queue.upload(id, newUploader(), server.endpoint(), NO_HEADERS, null, bytes -> { }));
+        }
+        assertEquals(AttachmentQueue.OUTCOME_FAILED,
+            queue.upload(id, newUploader(), server.endpoint(), NO_HEADERS, null, bytes -> { }));
+    }
+
+    @Test
+    public void unexpectedClientErrorFailsInsteadOfStayingUploading() throws Exception {
+        AttachmentQueue queue = newQueue(new InMemoryStore(null));
+        String badHeader = addReady(queue, randomBytes(100));
+        String badEndpoint = addReady(queue, randomBytes(100));
+
+        // HttpURLConnection rejects header values with line breaks unchecked
+        assertEquals(AttachmentQueue.OUTCOME_FAILED, queue.upload(badHeader, newUploader(), server.endpoint(),
+            Collections.singletonMap("Authorization", "Bearer a\nb"), null, bytes -> { }));
+        assertEquals(AttachmentQueue.STATE_FAILED, queue.get(badHeader).state);
+
+        assertFalse(ResumableUploader.isHttpUrl("file:///tmp/files"));
+        assertTrue(ResumableUploader.isHttpUrl(server.endpoint()));
+        queue.upload(badEndpoint, newUploader(), "file:///tmp/files", NO_HEADERS, null, bytes -> { });
+        assertEquals(AttachmentQueue.STATE_READY, queue.get(badEndpoint).state);
+
+        assertEquals(1, queue.pendingCount());
+        assertEquals(1, queue.inState(AttachmentQueue.STATE_READY).size());
+    }
+
+    @Test
+    public void onlyReadyAttachmentsAreUploaded() {
+        AttachmentQueue queue = newQueue(new InMemoryStore(null));
+        AttachmentQueue.Attachment attachment = queue.add("deliveryNote", "dn-1", "/tmp/photo.jpg", 1600, 80, 1L);
+
+        assertEquals(AttachmentQueue.OUTCOME_SKIPPED,
+            queue.upload(attachment.id, newUploader(), server.endpoint(), NO_HEADERS, null, bytes -> { }));
+        assertTrue(queue.markProcessingFailed(attachment.id, "decode"));
+        assertFalse(queue.markProcessed(attachment.id, "/x.jpg", "image/jpeg", 1, 1, 1));
+
+        assertTrue(queue.retry(attachment.id));
+        assertEquals(AttachmentQueue.STATE_PROCESSING, queue.get(attachment.id).state);
+    }
+
+    @Test
+    public void metadataDefaultsObjectNameToOwner() {
+        AttachmentQueue queue = newQueue(new InMemoryStore(null));
+        AttachmentQueue.Attachment attachment = queue.add("timeEntry", "te-7", "/tmp/photo.jpg", 1600, 80, 1L);
+        queue.markProcessed(attachment.id, "/data/attachments/timeEntry_abc.jpg", "image/jpeg", 10, 4, 3);
+
+        Map<String, String> metadata = AttachmentQueue.metadataFor(queue.get(attachment.id),
+            Collections.singletonMap("bucketName", "attachments"));
+
+        assertEquals("attachments", metadata.get("bucketName"));
+        assertEquals("timeEntry/te-7/timeEntry_abc.jpg", metadata.get("objectName"));
+        assertEquals("image/jpeg", metadata.get("contentType"));
+        assertEquals("bucketName YXR0YWNobWVudHM=", ResumableUploader.encodeMetadata(
+            Collections.singletonMap("bucketName", "attachments")));
+    }
+
+    private String addReady(AttachmentQueue queue, byte[] content) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        AttachmentQueue.Attachment attachment = queue.add("deliveryNote", "dn-1", "/tmp/source.jpg", 1600, 80, 1L);
+        assertTrue(queue.markProcessed(attachment.id, file.getAbsolutePath(), "image/jpeg", content.length, 10, 10));
+        return attachment.id;
+    }
+
+    private static ResumableUploader newUploader() {
+        return new ResumableUploader(CHUNK_SIZE, 5_000);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static AttachmentQueue newQueue(InMemoryStore store) {
+        return new AttachmentQueue(store, Runnable::run, MAX_ATTEMPTS);
+    }
+
+    /** Just enough of the tus protocol to exercise creation, offset lookup and chunked PATCH. */
+    private static final class FakeTusServer {
+        final Map<String, ByteArrayOutputStream> uploads = new ConcurrentHashMap<>();
+        final AtomicInteger creates = new AtomicInteger();
+        final AtomicInteger patches = new AtomicInteger();
+        volatile int failPatchNumber = -1;
+        volatile int createStatus = 201;
+        private final HttpServer http;
+
+        FakeTusServer() throws IOException {
+            http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            http.createContext("/files", this::handle);
+            http.start();
+        }
+
+        String endpoint() {
+            return "http://127.0.0.1:" + http.getAddress().getPort() + "/files";
+        }
+
+        byte[] received(String uploadUrl) {
+            return uploads.get(uploadUrl.substring(uploadUrl.lastIndexOf('/') + 1)).toByteArray();
+        }
+
+        void stop() {
+            http.stop(0);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            String override = exchange.getRequestHeaders().getFirst("X-HTTP-Method-Override");
+            byte[] body = readAll(exchange.getRequestBody());
+
+            if (path.equals("/files") && method.equals("POST")) {
+                if (createStatus != 201) {
+                    respond(exchange, createStatus);
+                    return;
+                }
+                String id = String.valueOf(creates.incrementAndGet());
+                uploads.put(id, new ByteArrayOutputStream());
+                exchange.getResponseHeaders().set("Location", "/files/" + id);
+                respond(exchange, 201);
+                return;
+            }
+
+            ByteArrayOutputStream upload = uploads.get(path.substring("/files/".length()));
+            if (upload == null) {
+                respond(exchange, 404);
+                return;
+            }
+            if (method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Upload-Offset", String.valueOf(upload.size()));
+                respond(exchange, 200);
+            } else if (method.equals("POST") && "PATCH".equals(override)) {
+                if (patches.incrementAndGet() == failPatchNumber) {
+                    respond(exchange, 503);
+                    return;
+                }
+                long offset = Long.parseLong(exchange.getRequestHeaders().getFirst("Upload-Offset"));
+                if (offset != upload.size()) {
+                    respond(exchange, 409);
+                    return;
+                }
+                upload.write(body);
+                exchange.getResponseHeaders().set("Upload-Offset", String.valueOf(upload.size()));
+                respond(exchange, 204);
+            } else {
+                respond(exchange, 405);
+            }
+        }
+
+        private static void respond(HttpExchange exchange, int status) throws IOException {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        }
+
+        private static byte[] readAll(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import java.io.File;
+
+/** Shared switches and output location for the benchmark runners. */
+final class BenchmarkResults {
+
+    private BenchmarkResults() {
+    }
+
+    static boolean enabled() {
+        return Boolean.parseBoolean(System.getProperty("benchmarks", "false"));
+    }
+
+    static File file(String name) {
+        File dir = new File(System.getProperty("benchmarkResultsDir", "build/benchmarks"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + dir);
+        }
+        return new File(dir, name);
+    }
+}
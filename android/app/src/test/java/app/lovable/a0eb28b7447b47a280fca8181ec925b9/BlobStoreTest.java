@@ -0,0 +1,51 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class BlobStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void onlyFilesInsideTheStoreCanBeDeleted() throws Exception {
+        File dir = new File(folder.getRoot(), "blobs");
+        BlobStore store = new BlobStore(dir, 0);
+        File blob = store.newFile("export", "json");
+        assertTrue(blob.createNewFile());
+        File outside = folder.newFile("outside.json");
+
+        assertNull(store.resolve(outside.getAbsolutePath()));
+        assertNull(store.resolve(dir.getAbsolutePath() + "/../outside.json"));
+        assertFalse(store.delete(outside.getAbsolutePath()));
+        assertTrue(outside.exists());
+
+        assertTrue(store.delete(blob.getAbsolutePath()));
+        assertFalse(blob.exists());
+    }
+
+    @Test
+    public void expiredFilesArePrunedOnCreate() throws Exception {
+        BlobStore store = new BlobStore(new File(folder.getRoot(), "blobs"), 1_000);
+        File old = store.newFile("old", "png");
+        assertTrue(old.createNewFile());
+        assertTrue(old.setLastModified(System.currentTimeMillis() - 5_000));
+        File fresh = store.newFile("fresh", "png");
+        assertTrue(fresh.createNewFile());
+
+        store.newFile("next", "png");
+
+        assertFalse(old.exists());
+        assertTrue(fresh.exists());
+        assertEquals(0, store.sizeOnDisk());
+    }
+}
@@ -0,0 +1,21 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+/** Queue store for tests: starts from a fixed snapshot and keeps the last one saved. */
+final class InMemoryStore implements OfflineActionQueue.Store {
+    private final String initial;
+    volatile String saved;
+
+    InMemoryStore(String initial) {
+        this.initial = initial;
+    }
+
+    @Override
+    public String load() {
+        return initial;
+    }
+
+    @Override
+    public void save(String snapshot) {
+        saved = snapshot;
+    }
+}
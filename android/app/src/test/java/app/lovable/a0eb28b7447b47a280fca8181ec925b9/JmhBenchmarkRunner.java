@@ -0,0 +1,41 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+
+/**
+ * Runs the JMH benchmarks in this package and writes the results as JSON.
+ *
+ * Excluded from the Gradle test task unless the build passes {@code -Pbenchmarks}, e.g.
+ * {@code ./gradlew :app:testDebugUnitTest --tests '*JmhBenchmarkRunner' -Pbenchmarks}.
+ * Benchmarks run in the test JVM (no fork) because the Gradle test worker
+ * classpath cannot be reproduced in a forked JVM.
+ */
+public class JmhBenchmarkRunner {
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        assumeTrue(BenchmarkResults.enabled());
+
+        File output = BenchmarkResults.file("jmh-results.json");
+        Options options = new OptionsBuilder()
+            .include(getClass().getPackage().getName() + "\\..*Benchmark\\.")
+            .forks(0)
+            .warmupIterations(3)
+            .warmupTime(TimeValue.seconds(1))
+            .measurementIterations(5)
+            .measurementTime(TimeValue.seconds(1))
+            .resultFormat(ResultFormatType.JSON)
+            .result(output.getAbsolutePath())
+            .build();
+        new Runner(options).run();
+    }
+}
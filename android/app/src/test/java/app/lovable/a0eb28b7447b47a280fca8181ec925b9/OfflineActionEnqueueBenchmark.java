@@ -0,0 +1,38 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding one action to the queue. Every call grows the queue, so within an
+ * iteration it reaches hundreds of thousands of actions whatever size it
+ * started at; there is no queue size parameter for that reason. Enqueue is a
+ * hash map put plus an append to the ordered skip list, so its cost barely
+ * depends on the queue size. Persisting the grown queue is covered by the
+ * snapshot benchmark in {@link OfflineActionQueueBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OfflineActionEnqueueBenchmark {
+
+    private OfflineActionQueue queue;
+
+    @Setup(Level.Iteration)
+    public void newQueue() {
+        queue = OfflineActionQueueBenchmark.newQueue(null);
+    }
+
+    @Benchmark
+    public OfflineActionQueue.Action enqueue() {
+        return queue.enqueue("time_entry", OfflineActionQueueBenchmark.ACTION_DATA, System.currentTimeMillis());
+    }
+}
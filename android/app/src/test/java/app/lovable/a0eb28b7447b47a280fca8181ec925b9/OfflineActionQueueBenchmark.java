@@ -0,0 +1,104 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue operations at different queue sizes. Persistence is dropped so the
+ * numbers cover the in-memory work; snapshot and restore are measured
+ * separately since they run on the writer thread and at startup. Enqueue
+ * grows the queue, so it lives in {@link OfflineActionEnqueueBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OfflineActionQueueBenchmark {
+
+    static final String ACTION_DATA =
+        "{\"projectId\":\"project-123\",\"employeeId\":\"employee-42\",\"minutes\":95,\"note\":\"Rohbau Arbeiten\"}";
+
+    @Param({ "10", "1000", "50000" })
+    public int queueSize;
+
+    private OfflineActionQueue queue;
+    private String snapshot;
+
+    @Setup(Level.Iteration)
+    public void fillQueue() {
+        queue = newQueue(null);
+        for (int i = 0; i < queueSize; i++) {
+            queue.enqueue("time_entry", ACTION_DATA, i);
+        }
+        snapshot = queue.snapshot();
+    }
+
+    @Benchmark
+    public List<OfflineActionQueue.Action> listUnsynced() {
+        return queue.getUnsynced();
+    }
+
+    @Benchmark
+    public String snapshot() {
+        return queue.snapshot();
+    }
+
+    @Benchmark
+    public OfflineActionQueue restore() {
+        return newQueue(snapshot);
+    }
+
+    /**
+     * One full sync pass: acknowledge every leased action as a batch and drop
+     * the synced entries. The queue is rebuilt before each call, so results
+     * at the smallest size include some harness overhead.
+     */
+    @Benchmark
+    public void claimAndMarkSynced(SyncState state, Blackhole blackhole) {
+        blackhole.consume(state.queue.complete("native", state.results, 1));
+        blackhole.consume(state.queue.clearSynced());
+    }
+
+    @State(Scope.Thread)
+    public static class SyncState {
+        OfflineActionQueue queue;
+        List<OfflineActionQueue.Result> results;
+
+        @Setup(Level.Invocation)
+        public void leaseQueue(OfflineActionQueueBenchmark benchmark) {
+            queue = newQueue(null);
+            for (int i = 0; i < benchmark.queueSize; i++) {
+                queue.enqueue("time_entry", ACTION_DATA, i);
+            }
+            List<OfflineActionQueue.Action> leased = queue.claim("native", benchmark.queueSize, 60_000, 0);
+            results = new ArrayList<>(leased.size());
+            for (OfflineActionQueue.Action action : leased) {
+                results.add(new OfflineActionQueue.Result(action.id, true, false, null));
+            }
+        }
+    }
+
+    static OfflineActionQueue newQueue(String stored) {
+        return new OfflineActionQueue(new OfflineActionQueue.Store() {
+            @Override
+            public String load() {
+                return stored;
+            }
+
+            @Override
+            public void save(String snapshot) {
+            }
+        }, task -> { }, 5);
+    }
+}
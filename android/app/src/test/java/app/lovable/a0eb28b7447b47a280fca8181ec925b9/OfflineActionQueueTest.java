@@ -0,0 +1,356 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class OfflineActionQueueTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int ACTIONS_PER_PRODUCER = 5_000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long LEASE_MILLIS = 60_000;
+
+    @Test
+    public void concurrentProducersAndSingleConsumerNeverLoseOrDuplicateActions() throws Exception {
+        InMemoryStore store = new InMemoryStore(null);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        OfflineActionQueue queue = new OfflineActionQueue(store, writer, MAX_ATTEMPTS);
+
+        ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean producing = new AtomicBoolean(true);
+        Set<String> enqueued = ConcurrentHashMap.newKeySet();
+        Set<String> synced = ConcurrentHashMap.newKeySet();
+        AtomicReference<String> duplicate = new AtomicReference<>();
+
+        Thread consumer = new Thread(() -> {
+            try {
+                start.await();
+                while (producing.get() || queue.unsyncedCount() > 0) {
+                    for (OfflineActionQueue.Action action : queue.claim("native", 100, LEASE_MILLIS, System.currentTimeMillis())) {
+                        if (!synced.add(action.id)) {
+                            duplicate.set(action.id);
+                        }
+                        assertTrue(queue.markSynced(action.id, System.currentTimeMillis()));
+                    }
+                    queue.clearSynced();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            producers.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < ACTIONS_PER_PRODUCER; i++) {
+                    String data = "{\"producer\":" + producer + ",\"index\":" + i + "}";
+                    enqueued.add(queue.enqueue("test", data, System.currentTimeMillis()).id);
+                }
+            });
+        }
+
+        start.countDown();
+        producers.shutdown();
+        assertTrue(producers.awaitTermination(60, TimeUnit.SECONDS));
+        producing.set(false);
+        consumer.join(60_000);
+        writer.shutdown();
+        assertTrue(writer.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(PRODUCERS * ACTIONS_PER_PRODUCER, enqueued.size());
+        assertEquals(enqueued, synced);
+        assertEquals(null, duplicate.get());
+        assertEquals(0, queue.unsyncedCount());
+        assertEquals(0, queue.clearSynced());
+    }
+
+    @Test
+    public void concurrentClaimsHandOutEachActionOnce() throws Exception {
+        OfflineActionQueue queue = newQueue(new InMemoryStore(null));
+        for (int i = 0; i < 1_000; i++) {
+            queue.enqueue("test", "{}", i);
+        }
+
+        ExecutorService consumers = Executors.newFixedThreadPool(4);
+        Set<String> claimed = ConcurrentHashMap.newKeySet();
+        AtomicBoolean duplicate = new AtomicBoolean();
+        for (int c = 0; c < 4; c++) {
+            consumers.execute(() -> {
+                List<OfflineActionQueue.Action> batch;
+                while (!(batch = queue.claim("native", 7, LEASE_MILLIS, 0)).isEmpty()) {
+                    for (OfflineActionQueue.Action action : batch) {
+                        if (!claimed.add(action.id)) {
+                            duplicate.set(true);
+                        }
+                    }
+                }
+            });
+        }
+        consumers.shutdown();
+        assertTrue(consumers.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertFalse(duplicate.get());
+        assertEquals(1_000, claimed.size());
+    }
+
+    @Test
+    public void snapshotRestoresUnacknowledgedActionsAsPending() {
+        InMemoryStore store = new InMemoryStore(null);
+        OfflineActionQueue queue = newQueue(store);
+        OfflineActionQueue.Action synced = queue.enqueue("a", "{\"n\":1}", 1);
+        OfflineActionQueue.Action inFlight = queue.enqueue("b", "{\"n\":2}", 2);
+        queue.enqueue("c", "{\"n\":3}", 3);
+        queue.claim("native", 2, LEASE_MILLIS, 0);
+        queue.markSynced(synced.id, 10);
+
+        OfflineActionQueue restored = newQueue(new InMemoryStore(store.saved));
+
+        assertEquals(2, restored.unsyncedCount());
+        List<OfflineActionQueue.Action> pending = restored.claim("native", 10, LEASE_MILLIS, 0);
+        assertEquals(2, pending.size());
+        assertEquals(inFlight.id, pending.get(0).id);
+        assertEquals("{\"n\":2}", pending.get(0).actionData);
+        assertFalse(restored.markSynced(synced.id, 20));
+    }
+
+    @Test
+    public void duplicateAcknowledgementIsIgnored() {
+        OfflineActionQueue queue = newQueue(new InMemoryStore(null));
+        OfflineActionQueue.Action action = queue.enqueue("a", "{}", 1);
+
+        assertTrue(queue.markSynced(action.id, 2));
+        assertFalse(queue.markSynced(action.id, 3));
+        assertFalse(queue.release("native", action.id));
+        assertEquals(0, queue.unsyncedCount());
+    }
+
+    @Test
+    public void leasedActionsAreInvisibleToOtherOwnersUntilExpiry() {
+        OfflineActionQueue queue = newQueue(new InMemoryStore(null));
+        OfflineActionQueue.Action action = queue.enqueue("a", "{}", 1);
+
+        assertEquals(1, queue.claim("web", 10, 1_000, 0).size());
+        assertTrue(queue.claim("native", 10, 1_000, 999).isEmpty());
+
+        List<OfflineActionQueue.Action> reclaimed = queue.claim("native", 10, 1_000, 1_000);
+        assertEquals(1, reclaimed.size());
+        assertEquals(2, reclaimed.get(0).getAttempts());
+
+        // The original owner's failure report arrives after its lease was taken over
+        List<String> outcomes = queue.complete("web",
+            Collections.singletonList(new OfflineActionQueue.Result(action.id, false, true, "timeout")), 1_500);
+        assertEquals(OfflineActionQueue.OUTCOME_STALE, outcomes.get(0));
+        assertEquals(OfflineActionQueue.STATE_IN_FLIGHT, action.getState());
+    }
+
+    @Test
+    public void batchResultsAreAppliedPerItem() {
+        OfflineActionQueue queue = newQueue(new InMemoryStore(null));
+        OfflineActionQueue.Action ok = queue.enqueue("a", "{}", 1);
+        OfflineActionQueue.Action flaky = queue.enqueue("b", "{}", 2);
+        OfflineActionQueue.Action poison = queue.enqueue("c", "{}", 3);
+        queue.claim("native", 10, LEASE_MILLIS, 0);
+
+        List<String> outcomes = queue.complete("native", Arrays.asList(
+            new OfflineActionQueue.Result(ok.id, true, false, null),
+            new OfflineActionQueue.Result(flaky.id, false, true, "503"),
+            new OfflineActionQueue.Result(poison.id, false, false, "400 invalid payload"),
+            new OfflineActionQueue.Result("missing", true, false, null)
+        ), 10);
+
+        assertEquals(Arrays.asList(
+            OfflineActionQueue.OUTCOME_SYNCED,
+            OfflineActionQueue.OUTCOME_RETRY,
+            OfflineActionQueue.OUTCOME_DEAD,
+            OfflineActionQueue.OUTCOME_UNKNOWN
+        ), outcomes);
+        assertEquals(1, queue.unsyncedCount());
+        assertEquals(1, queue.deadLetterCount());
+
+        // The poison record does not block the rest of the queue
+        List<OfflineActionQueue.Action> next = queue.claim("native", 10, LEASE_MILLIS, 20);
+        assertEquals(1, next.size());
+        assertEquals(flaky.id, next.get(0).id);
+    }
+
+    @Test
+    public void repeatedFailuresEndInDeadLetterAndCanBeRetried() {
+        OfflineActionQueue queue = newQueue(new InMemoryStore(null));
+        OfflineActionQueue.Action action = queue.enqueue("a", "{}", 1);
+        List<OfflineActionQueue.Result> failure =
+            Collections.singletonList(new OfflineActionQueue.Result(action.id, false, true, "500"));
+
+        for (int attempt = 1; attempt < MAX_ATTEMPTS; attempt++) {
+            queue.claim("native", 1, LEASE_MILLIS, attempt);
+            assertEquals(OfflineActionQueue.OUTCOME_RETRY, queue.complete("native", failure, attempt).get(0));
+        }
+        queue.claim("native", 1, LEASE_MILLIS, MAX_ATTEMPTS);
+        assertEquals(OfflineActionQueue.OUTCOME_DEAD, queue.complete("native", failure, MAX_ATTEMPTS).get(0));
+        assertTrue(queue.claim("native", 1, LEASE_MILLIS, MAX_ATTEMPTS + 1).isEmpty());
+        assertEquals(1, queue.getDeadLetters().size());
+
+        assertTrue(queue.retryDeadLetter(action.id));
+        assertEquals(0, queue.deadLetterCount());
+        assertEquals(1, queue.claim("native", 1, LEASE_MILLIS, 100).get(0).getAttempts());
+    }
+
+    @Test
+    public void expiredLeasePastAttemptLimitIsDeadLettered() {
+        OfflineActionQueue queue = newQueue(new InMemoryStore(null));
+        OfflineActionQueue.Action action = queue.enqueue("a", "{}", 1);
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            assertEquals(1, queue.claim("native", 1, 10, attempt * 10L).size());
+        }
+        assertTrue(queue.claim("native", 1, 10, MAX_ATTEMPTS * 10L).isEmpty());
+        assertEquals(OfflineActionQueue.STATE_DEAD, action.getState());
+        assertTrue(queue.discardDeadLetter(action.id));
+        assertEquals(0, queue.deadLetterCount());
+        assertTrue(queue.getDeadLetters().isEmpty());
+    }
+
+    @Test
+    public void actionThatCrashesEveryUploadIsDeadLetteredAfterRestarts() {
+        InMemoryStore store = new InMemoryStore(null);
+        OfflineActionQueue.Action action = newQueue(store).enqueue("a", "{}", 1);
+
+        String snapshot = store.saved;
+        for (int launch = 0; launch < MAX_ATTEMPTS; launch++) {
+            InMemoryStore relaunched = new InMemoryStore(snapshot);
+            assertEquals(1, newQueue(relaunched).claim("native", 1, LEASE_MILLIS, 0).size());
+            // The process dies before the upload is acknowledged
+            snapshot = relaunched.saved;
+        }
+
+        OfflineActionQueue restored = newQueue(new InMemoryStore(snapshot));
+        assertTrue(restored.claim("native", 1, LEASE_MILLIS, 0).isEmpty());
+        assertEquals(1, restored.deadLetterCount());
+        assertEquals(action.id, restored.getDeadLetters().get(0).id);
+        assertEquals(MAX_ATTEMPTS, restored.getDeadLetters().get(0).getAttempts());
+    }
+
+    @Test
+    public void onlyTheLeaseOwnerCanRelease() {
+        OfflineActionQueue queue = newQueue(new InMemoryStore(null));
+        OfflineActionQueue.Action action = queue.enqueue("a", "{}", 1);
+        queue.claim("native", 1, LEASE_MILLIS, 0);
+
+        assertFalse(queue.release("web", action.id));
+        assertTrue(queue.claim("web", 1, LEASE_MILLIS, 0).isEmpty());
+
+        assertTrue(queue.release("native", action.id));
+        assertEquals(1, queue.claim("web", 1, LEASE_MILLIS, 0).size());
+
+        // Released after the last attempt, so it is not handed out again
+        assertTrue(queue.release("web", action.id));
+        assertEquals(1, queue.claim("native", 1, LEASE_MILLIS, 0).size());
+        assertTrue(queue.release("native", action.id));
+        assertTrue(queue.claim("web", 1, LEASE_MILLIS, 0).isEmpty());
+        assertEquals(1, queue.deadLetterCount());
+    }
+
+    @Test
+    public void restartResendsOnlyUnacknowledgedActionsAndKeepsAttempts() {
+        InMemoryStore store = new InMemoryStore(null);
+        OfflineActionQueue queue = newQueue(store);
+        OfflineActionQueue.Action acked = queue.enqueue("a", "{}", 1);
+        OfflineActionQueue.Action unacked = queue.enqueue("b", "{}", 2);
+        queue.claim("native", 10, LEASE_MILLIS, 0);
+        queue.complete("native",
+            Collections.singletonList(new OfflineActionQueue.Result(acked.id, true, false, null)), 5);
+
+        // Simulated crash: the lease on the second action is never resolved
+        OfflineActionQueue restored = newQueue(new InMemoryStore(store.saved));
+
+        List<OfflineActionQueue.Action> resent = restored.claim("native", 10, LEASE_MILLIS, 0);
+        assertEquals(1, resent.size());
+        assertEquals(unacked.id, resent.get(0).id);
+        assertEquals(2, resent.get(0).getAttempts());
+    }
+
+    @Test
+    public void legacySnapshotWithoutStatusIsRestored() {
+        String legacy = "[{\"id\":\"1_1\",\"actionType\":\"a\",\"actionData\":{},\"timestamp\":1,\"synced\":false},"
+            + "{\"id\":\"2_2\",\"actionType\":\"b\",\"actionData\":{},\"timestamp\":2,\"synced\":true,\"syncedAt\":3}]";
+        OfflineActionQueue queue = newQueue(new InMemoryStore(legacy));
+
+        assertEquals(1, queue.unsyncedCount());
+        assertEquals(1, queue.clearSynced());
+    }
+
+    @Test
+    public void malformedRecordIsSkippedAndKeptInTheSnapshot() throws Exception {
+        String stored = "[{\"id\":\"1_1\",\"actionType\":\"a\",\"actionData\":{},\"timestamp\":1},"
+            + "{\"id\":\"2_2\",\"actionType\":\"b\"},"
+            + "{\"id\":\"3_3\",\"actionType\":\"c\",\"actionData\":{},\"timestamp\":3}]";
+        InMemoryStore store = new InMemoryStore(stored);
+        OfflineActionQueue queue = newQueue(store);
+
+        assertEquals(2, queue.unsyncedCount());
+        queue.enqueue("d", "{}", 4);
+
+        JSONArray saved = new JSONArray(store.saved);
+        assertEquals(4, saved.length());
+        assertEquals("2_2", saved.getJSONObject(3).getString("id"));
+        assertEquals(3, newQueue(new InMemoryStore(store.saved)).unsyncedCount());
+    }
+
+    @Test
+    public void corruptSnapshotIsNotOverwritten() throws Exception {
+        InMemoryStore store = new InMemoryStore("[{\"id\":\"1_1\",");
+        OfflineActionQueue queue = newQueue(store);
+
+        assertEquals(0, queue.unsyncedCount());
+        queue.enqueue("a", "{}", 1);
+
+        JSONArray saved = new JSONArray(store.saved);
+        assertEquals(2, saved.length());
+        assertEquals("[{\"id\":\"1_1\",", saved.getString(1));
+        assertEquals(1, newQueue(new InMemoryStore(store.saved)).unsyncedCount());
+    }
+
+    @Test
+    public void exportWritesOnlyUnsyncedActions() throws Exception {
+        OfflineActionQueue queue = newQueue(new InMemoryStore(null));
+        OfflineActionQueue.Action synced = queue.enqueue("a", "{\"n\":1}", 1);
+        queue.enqueue("b", "{\"n\":2}", 2);
+        queue.markSynced(synced.id, 3);
+
+        StringBuilder out = new StringBuilder();
+        assertEquals(1, queue.writeActions(out, true));
+
+        JSONArray exported = new JSONArray(out.toString());
+        assertEquals(1, exported.length());
+        assertEquals("b", exported.getJSONObject(0).getString("actionType"));
+        assertEquals(2, exported.getJSONObject(0).getJSONObject("actionData").getInt("n"));
+        assertEquals(2, new JSONArray(queue.snapshot()).length());
+    }
+
+    private static OfflineActionQueue newQueue(InMemoryStore store) {
+        return new OfflineActionQueue(store, Runnable::run, MAX_ATTEMPTS);
+    }
+}
@@ -0,0 +1,61 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Saving and collecting offline time entries at different store sizes. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OfflineTimeEntriesBenchmark {
+
+    @Param({ "10", "1000", "50000" })
+    public int entryCount;
+
+    private String entriesJson;
+
+    /**
+     * Builds the stored list in one pass. Appending one entry at a time would
+     * re-parse the whole list for every entry, which at 50k entries never
+     * finishes; each entry is still stamped by {@link OfflineTimeEntries#append}.
+     */
+    @Setup
+    public void buildEntries() throws JSONException {
+        JSONArray entries = new JSONArray();
+        for (int i = 0; i < entryCount; i++) {
+            entries.put(new JSONArray(OfflineTimeEntries.append("[]", timeEntry(i), i)).getJSONObject(0));
+        }
+        entriesJson = entries.toString();
+    }
+
+    @Benchmark
+    public String append() throws JSONException {
+        return OfflineTimeEntries.append(entriesJson, timeEntry(entryCount), System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public List<JSONObject> collectUnsynced() throws JSONException {
+        return OfflineTimeEntries.unsynced(entriesJson);
+    }
+
+    private static JSONObject timeEntry(int index) throws JSONException {
+        return new JSONObject()
+            .put("projectId", "project-" + (index % 25))
+            .put("startTime", 1_700_000_000_000L + index * 3_600_000L)
+            .put("endTime", 1_700_000_000_000L + index * 3_600_000L + 5_400_000L)
+            .put("description", "Rohbau Arbeiten")
+            .put("location", new JSONObject().put("lat", 52.52).put("lng", 13.405));
+    }
+}
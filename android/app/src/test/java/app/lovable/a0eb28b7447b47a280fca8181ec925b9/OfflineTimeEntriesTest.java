@@ -0,0 +1,253 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class OfflineTimeEntriesTest {
+
+    private static final String SERVER_ID = "te-1";
+    private static final long EDITED_AT = 1_000;
+
+    @Test
+    public void unchangedServerRowIsUploadedAsIs() throws Exception {
+        String json = editOfServerRow(new JSONObject().put("description", "Wand A fertig"));
+
+        OfflineTimeEntries.MergeOutcome outcome = merge(json, serverRow("r1", 500, base()), lastWriterWins());
+
+        assertEquals(1, outcome.uploads.size());
+        JSONObject upload = outcome.uploads.get(0);
+        assertEquals(OfflineTimeEntries.OPERATION_UPDATE, upload.getString("operation"));
+        assertEquals("r1", upload.getString("expectedRevision"));
+        assertEquals("Wand A fertig", upload.getJSONObject("data").getString("description"));
+        assertTrue(outcome.conflicts.isEmpty());
+    }
+
+    @Test
+    public void editsToDifferentFieldsAreMergedWithoutConflict() throws Exception {
+        String json = editOfServerRow(new JSONObject().put("description", "Wand A fertig"));
+        JSONObject server = base().put("endTime", 9_000);
+
+        OfflineTimeEntries.MergeOutcome outcome = merge(json, serverRow("r2", 2_000, server), manualForAll());
+
+        assertTrue(outcome.conflicts.isEmpty());
+        JSONObject data = outcome.uploads.get(0).getJSONObject("data");
+        assertEquals("Wand A fertig", data.getString("description"));
+        assertEquals(9_000, data.getLong("endTime"));
+        assertEquals("r2", outcome.uploads.get(0).getString("expectedRevision"));
+
+        // Rebased onto r2, so the next sync against the same row is a plain upload
+        OfflineTimeEntries.MergeOutcome again = merge(outcome.entriesJson, serverRow("r2", 2_000, server), manualForAll());
+        assertEquals(1, again.uploads.size());
+        assertTrue(again.conflicts.isEmpty());
+    }
+
+    @Test
+    public void lastWriterWinsPerField() throws Exception {
+        String json = editOfServerRow(new JSONObject().put("description", "lokal"));
+
+        OfflineTimeEntries.MergeOutcome localLater = merge(json,
+            serverRow("r2", EDITED_AT - 1, base().put("description", "Büro")), lastWriterWins());
+        assertEquals("lokal", localLater.uploads.get(0).getJSONObject("data").getString("description"));
+
+        OfflineTimeEntries.MergeOutcome serverLater = merge(json,
+            serverRow("r2", EDITED_AT + 1, base().put("description", "Büro")), lastWriterWins());
+        assertTrue(serverLater.uploads.isEmpty());
+        assertEquals(1, serverLater.unchanged);
+        assertTrue(OfflineTimeEntries.unsynced(serverLater.entriesJson).isEmpty());
+    }
+
+    @Test
+    public void fieldRulesOverrideTheDefault() throws Exception {
+        String json = editOfServerRow(new JSONObject().put("description", "lokal").put("endTime", 8_000));
+        JSONObject server = base().put("description", "Büro").put("endTime", 9_000);
+        Map<String, String> byField = new HashMap<>();
+        byField.put("description", TimeEntryMerge.RULE_LOCAL);
+        byField.put("endTime", TimeEntryMerge.RULE_SERVER);
+
+        OfflineTimeEntries.MergeOutcome outcome = merge(json, serverRow("r2", EDITED_AT + 1, server),
+            new TimeEntryMerge.Rules(TimeEntryMerge.RULE_MANUAL, byField));
+
+        JSONObject data = outcome.uploads.get(0).getJSONObject("data");
+        assertEquals("lokal", data.getString("description"));
+        assertEquals(9_000, data.getLong("endTime"));
+    }
+
+    @Test
+    public void manualConflictIsKeptUntilResolved() throws Exception {
+        String json = editOfServerRow(new JSONObject().put("description", "lokal"));
+        Map<String, JSONObject> rows = serverRow("r2", 2_000, base().put("description", "Büro"));
+
+        OfflineTimeEntries.MergeOutcome outcome = merge(json, rows, manualForAll());
+
+        assertTrue(outcome.uploads.isEmpty());
+        assertEquals(1, outcome.conflicts.size());
+        JSONObject field = outcome.conflicts.get(0).getJSONObject("fields").getJSONObject("description");
+        assertEquals("Rohbau", field.getString("base"));
+        assertEquals("lokal", field.getString("local"));
+        assertEquals("Büro", field.getString("server"));
+
+        OfflineTimeEntries.MergeOutcome again = merge(outcome.entriesJson, rows, manualForAll());
+        assertEquals(1, again.conflicts.size());
+
+        String entryId = outcome.conflicts.get(0).getString("entryId");
+        String resolved = OfflineTimeEntries.resolveConflict(again.entriesJson, entryId,
+            OfflineTimeEntries.RESOLVE_MERGE, new JSONObject().put("description", "Büro + lokal"), 3_000);
+        OfflineTimeEntries.MergeOutcome afterResolve = merge(resolved, rows, manualForAll());
+
+        assertTrue(afterResolve.conflicts.isEmpty());
+        assertEquals("Büro + lokal", afterResolve.uploads.get(0).getJSONObject("data").getString("description"));
+        assertEquals("r2", afterResolve.uploads.get(0).getString("expectedRevision"));
+    }
+
+    @Test
+    public void deletedServerRowIsAConflictThatCanBeRecreated() throws Exception {
+        String json = editOfServerRow(new JSONObject().put("description", "lokal"));
+
+        OfflineTimeEntries.MergeOutcome outcome = merge(json, Collections.<String, JSONObject>emptyMap(), lastWriterWins());
+
+        assertEquals(OfflineTimeEntries.CONFLICT_DELETED, outcome.conflicts.get(0).getString("reason"));
+        String entryId = outcome.conflicts.get(0).getString("entryId");
+
+        String recreated = OfflineTimeEntries.resolveConflict(outcome.entriesJson, entryId,
+            OfflineTimeEntries.RESOLVE_RECREATE, null, 2_000);
+        OfflineTimeEntries.MergeOutcome afterRecreate = merge(recreated, Collections.<String, JSONObject>emptyMap(), lastWriterWins());
+        assertEquals(OfflineTimeEntries.OPERATION_CREATE, afterRecreate.uploads.get(0).getString("operation"));
+
+        String discarded = OfflineTimeEntries.resolveConflict(outcome.entriesJson, entryId,
+            OfflineTimeEntries.RESOLVE_DISCARD, null, 2_000);
+        assertEquals(0, new JSONArray(discarded).length());
+    }
+
+    @Test
+    public void newAndLegacyEntriesAreCreated() throws Exception {
+        String legacy = "[{\"id\":\"1_1\",\"projectId\":\"p\",\"startTime\":1,\"createdAt\":1,\"synced\":false}]";
+        String json = OfflineTimeEntries.append(legacy, new JSONObject().put("projectId", "q"), EDITED_AT);
+
+        OfflineTimeEntries.MergeOutcome outcome = merge(json, Collections.<String, JSONObject>emptyMap(), lastWriterWins());
+
+        assertEquals(2, outcome.uploads.size());
+        for (JSONObject upload : outcome.uploads) {
+            assertEquals(OfflineTimeEntries.OPERATION_CREATE, upload.getString("operation"));
+            assertFalse(upload.getJSONObject("data").has("sync"));
+            assertFalse(upload.getJSONObject("data").has("synced"));
+        }
+    }
+
+    @Test
+    public void syncedEntryBecomesBaseForTheNextOfflineEdit() throws Exception {
+        String json = OfflineTimeEntries.append("[]", base(), EDITED_AT);
+        String entryId = new JSONArray(json).getJSONObject(0).getString("id");
+        json = OfflineTimeEntries.markSynced(json, entryId, SERVER_ID, "r1", base(), 1_500);
+        assertTrue(OfflineTimeEntries.unsynced(json).isEmpty());
+
+        // 5.0 and 5 are the same value, so only the description counts as changed
+        json = OfflineTimeEntries.update(json, entryId,
+            new JSONObject().put("startTime", 100.0).put("description", "lokal"), 2_000);
+        JSONObject server = base().put("endTime", 9_000);
+        OfflineTimeEntries.MergeOutcome outcome = merge(json, serverRow("r2", 3_000, server), manualForAll());
+
+        assertTrue(outcome.conflicts.isEmpty());
+        JSONObject data = outcome.uploads.get(0).getJSONObject("data");
+        assertEquals("lokal", data.getString("description"));
+        assertEquals(9_000, data.getLong("endTime"));
+        assertNull(OfflineTimeEntries.update(json, "missing", new JSONObject(), 2_000));
+    }
+
+    @Test
+    public void editDuringUploadIsNotMarkedSynced() throws Exception {
+        String json = editOfServerRow(new JSONObject().put("description", "X"));
+        JSONObject upload = merge(json, serverRow("r1", 500, base()), lastWriterWins()).uploads.get(0);
+        String entryId = upload.getString("entryId");
+
+        json = OfflineTimeEntries.update(json, entryId, new JSONObject().put("description", "Y"), 2_000);
+        json = OfflineTimeEntries.markSynced(json, entryId, SERVER_ID, "r2", upload.getJSONObject("data"), 3_000);
+
+        assertFalse(OfflineTimeEntries.isSynced(json, entryId));
+        JSONObject sync = new JSONArray(json).getJSONObject(0).getJSONObject("sync");
+        assertEquals("X", sync.getJSONObject("base").getString("description"));
+
+        // Rebased onto r2, so Y goes out as a plain update; acknowledging it syncs the entry
+        OfflineTimeEntries.MergeOutcome outcome = merge(json, serverRow("r2", 2_500, base().put("description", "X")), manualForAll());
+        assertTrue(outcome.conflicts.isEmpty());
+        JSONObject next = outcome.uploads.get(0);
+        assertEquals("Y", next.getJSONObject("data").getString("description"));
+        assertEquals("r2", next.getString("expectedRevision"));
+
+        json = OfflineTimeEntries.markSynced(outcome.entriesJson, entryId, SERVER_ID, "r3", next.getJSONObject("data"), 4_000);
+        assertTrue(OfflineTimeEntries.isSynced(json, entryId));
+    }
+
+    @Test
+    public void reservedKeysOfTheServerRowAreIgnored() throws Exception {
+        String json = OfflineTimeEntries.append("[]", base().put("description", "lokal"),
+            SERVER_ID, "r1", base().put("id", "srv-1"), EDITED_AT);
+        String entryId = new JSONArray(json).getJSONObject(0).getString("id");
+        JSONObject server = base().put("id", "srv-1").put("createdAt", 1).put("synced", true).put("endTime", 9_000);
+
+        OfflineTimeEntries.MergeOutcome outcome = merge(json, serverRow("r2", 2_000, server), lastWriterWins());
+
+        JSONObject upload = outcome.uploads.get(0);
+        assertEquals(entryId, upload.getString("entryId"));
+        assertFalse(upload.getJSONObject("data").has("id"));
+        assertEquals(9_000, upload.getJSONObject("data").getLong("endTime"));
+        JSONObject entry = new JSONArray(outcome.entriesJson).getJSONObject(0);
+        assertEquals(entryId, entry.getString("id"));
+        assertEquals(EDITED_AT, entry.getLong("createdAt"));
+        assertFalse(entry.getBoolean("synced"));
+
+        String synced = OfflineTimeEntries.markSynced(outcome.entriesJson, entryId, SERVER_ID, "r3", upload.getJSONObject("data"), 3_000);
+        assertTrue(OfflineTimeEntries.isSynced(synced, entryId));
+    }
+
+    @Test
+    public void serverRowsAreOnlyNeededForEditsOfServerRows() throws Exception {
+        assertFalse(OfflineTimeEntries.needsServerRows(OfflineTimeEntries.append("[]", base(), EDITED_AT)));
+        assertTrue(OfflineTimeEntries.needsServerRows(editOfServerRow(new JSONObject().put("description", "lokal"))));
+    }
+
+    private static String editOfServerRow(JSONObject changes) throws Exception {
+        JSONObject entry = base();
+        for (String key : JSONObject.getNames(changes)) {
+            entry.put(key, changes.get(key));
+        }
+        return OfflineTimeEntries.append("[]", entry, SERVER_ID, "r1", base(), EDITED_AT);
+    }
+
+    private static JSONObject base() throws Exception {
+        return new JSONObject()
+            .put("projectId", "p-1")
+            .put("startTime", 100)
+            .put("description", "Rohbau");
+    }
+
+    private static Map<String, JSONObject> serverRow(String revision, long modifiedAt, JSONObject data) throws Exception {
+        return Collections.singletonMap(SERVER_ID, new JSONObject()
+            .put("id", SERVER_ID)
+            .put("revision", revision)
+            .put("modifiedAt", modifiedAt)
+            .put("data", data));
+    }
+
+    private static OfflineTimeEntries.MergeOutcome merge(String json, Map<String, JSONObject> rows,
+                                                         TimeEntryMerge.Rules rules) throws Exception {
+        return OfflineTimeEntries.merge(json, rows, rules, 5_000);
+    }
+
+    private static TimeEntryMerge.Rules lastWriterWins() {
+        return TimeEntryMerge.Rules.lastWriterWins();
+    }
+
+    private static TimeEntryMerge.Rules manualForAll() {
+        return new TimeEntryMerge.Rules(TimeEntryMerge.RULE_MANUAL, new HashMap<String, String>());
+    }
+}
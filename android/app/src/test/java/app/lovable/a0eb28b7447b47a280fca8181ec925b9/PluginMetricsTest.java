@@ -0,0 +1,53 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class PluginMetricsTest {
+
+    @Test
+    public void histogramReportsBucketedPercentiles() throws Exception {
+        PluginMetrics.Histogram histogram = new PluginMetrics.Histogram("test", "us");
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.count());
+        // 50 falls in bucket [32, 64), 99 and 100 in [64, 128) capped at the observed max
+        assertEquals(63, histogram.percentile(0.50));
+        assertEquals(100, histogram.percentile(0.99));
+
+        JSONObject json = histogram.toJson();
+        assertEquals(5050, json.getLong("sum"));
+        assertEquals(50, json.getLong("mean"));
+        assertEquals(100, json.getLong("max"));
+    }
+
+    @Test
+    public void histogramClampsNegativeAndHugeValues() {
+        PluginMetrics.Histogram histogram = new PluginMetrics.Histogram("test", "us");
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 2);
+
+        assertEquals(2, histogram.count());
+        assertEquals(0, histogram.percentile(0.5));
+        assertTrue(histogram.percentile(1.0) > 0);
+    }
+
+    @Test
+    public void resetClearsHistogramsAndCountersButKeepsGauges() throws Exception {
+        PluginMetrics.ADD_OFFLINE_ACTION_US.record(10);
+        PluginMetrics.ACTIONS_ENQUEUED.inc();
+        PluginMetrics.QUEUE_DEPTH.set(7);
+
+        PluginMetrics.reset();
+
+        JSONObject json = PluginMetrics.toJson();
+        assertEquals(0, json.getJSONObject("histograms").getJSONObject("offlineSync.addOfflineAction").getLong("count"));
+        assertEquals(0, json.getJSONObject("counters").getLong("offlineSync.actionsEnqueued"));
+        assertEquals(7, json.getJSONObject("gauges").getJSONObject("offlineSync.queueDepth").getLong("value"));
+    }
+}
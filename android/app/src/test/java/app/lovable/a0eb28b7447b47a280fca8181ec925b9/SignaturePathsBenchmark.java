@@ -0,0 +1,58 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/** Parsing of signature strokes into coordinate arrays; drawing is covered by SignatureRenderBenchmark. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SignaturePathsBenchmark {
+
+    @Param({ "50", "500", "5000" })
+    public int pointCount;
+
+    private JSONArray paths;
+
+    @Setup
+    public void buildPaths() throws JSONException {
+        paths = signaturePaths(pointCount);
+    }
+
+    @Benchmark
+    public float[][] parsePaths() throws JSONException {
+        return SignatureRenderer.parsePaths(paths);
+    }
+
+    /** A signature of {@code pointCount} points spread over strokes of up to 100 points. */
+    static JSONArray signaturePaths(int pointCount) throws JSONException {
+        JSONArray paths = new JSONArray();
+        int remaining = pointCount;
+        int stroke = 0;
+        while (remaining > 0) {
+            int strokePoints = Math.min(100, remaining);
+            JSONArray points = new JSONArray();
+            for (int i = 0; i < strokePoints; i++) {
+                double t = (stroke * 100 + i) / (double) pointCount;
+                points.put(new JSONObject()
+                    .put("x", 20 + 360 * t)
+                    .put("y", 100 + 60 * Math.sin(t * 40)));
+            }
+            paths.put(new JSONObject().put("points", points));
+            remaining -= strokePoints;
+            stroke++;
+        }
+        return paths;
+    }
+}
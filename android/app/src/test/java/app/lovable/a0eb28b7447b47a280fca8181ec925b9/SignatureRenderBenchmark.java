@@ -0,0 +1,94 @@
+package app.lovable.a0eb28b7447b47a280fca8181ec925b9;
+
+import static org.junit.Assume.assumeTrue;
+
+import android.graphics.Bitmap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Signature drawing and PNG encoding at different point counts.
+ *
+ * Needs the Android graphics stack, so it runs under Robolectric with native
+ * graphics instead of JMH, using a plain warmup/measure loop. Results go to
+ * signature-render-results.json next to the JMH results. Absolute numbers
+ * reflect the host CPU; compare them run over run on the same machine.
+ *
+ * The Gradle test task excludes this class unless {@code -Pbenchmarks} is
+ * set, so plain test runs never build the SDK 34 sandbox; the assumption
+ * below only guards runs started from the IDE.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class SignatureRenderBenchmark {
+
+    private static final int[] POINT_COUNTS = { 50, 500, 5000 };
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int MEASURE_ITERATIONS = 50;
+
+    @Test
+    public void renderAndEncode() throws Exception {
+        assumeTrue(BenchmarkResults.enabled());
+
+        JSONArray results = new JSONArray();
+        for (int pointCount : POINT_COUNTS) {
+            float[][] strokes = SignatureRenderer.parsePaths(SignaturePathsBenchmark.signaturePaths(pointCount));
+            long[] renderNanos = new long[MEASURE_ITERATIONS];
+            long[] encodeNanos = new long[MEASURE_ITERATIONS];
+            int pngBytes = 0;
+
+            for (int i = 0; i < WARMUP_ITERATIONS + MEASURE_ITERATIONS; i++) {
+                long start = System.nanoTime();
+                Bitmap bitmap = SignatureRenderer.render(strokes, SignatureRenderer.DEFAULT_WIDTH, SignatureRenderer.DEFAULT_HEIGHT);
+                long rendered = System.nanoTime();
+                pngBytes = SignatureRenderer.encodePng(bitmap).length;
+                long encoded = System.nanoTime();
+                bitmap.recycle();
+
+                if (i >= WARMUP_ITERATIONS) {
+                    renderNanos[i - WARMUP_ITERATIONS] = rendered - start;
+                    encodeNanos[i - WARMUP_ITERATIONS] = encoded - rendered;
+                }
+            }
+
+            results.put(result("render", pointCount, renderNanos, pngBytes));
+            results.put(result("encodePng", pointCount, encodeNanos, pngBytes));
+        }
+
+        try (FileOutputStream out = new FileOutputStream(BenchmarkResults.file("signature-render-results.json"))) {
+            out.write(results.toString(2).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static JSONObject result(String operation, int pointCount, long[] nanos, int pngBytes) throws Exception {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long value : sorted) {
+            sum += value;
+        }
+        // Same shape as the JMH JSON entries so both files can be read by one script
+        return new JSONObject()
+            .put("benchmark", SignatureRenderBenchmark.class.getName() + "." + operation)
+            .put("params", new JSONObject().put("pointCount", String.valueOf(pointCount)))
+            .put("primaryMetric", new JSONObject()
+                .put("score", sum / (double) sorted.length / 1000.0)
+                .put("scoreUnit", "us/op")
+                .put("scorePercentiles", new JSONObject()
+                    .put("50.0", sorted[sorted.length / 2] / 1000.0)
+                    .put("90.0", sorted[(int) (sorted.length * 0.9)] / 1000.0)
+                    .put("100.0", sorted[sorted.length - 1] / 1000.0)))
+            .put("pngBytes", pngBytes);
+    }
+}
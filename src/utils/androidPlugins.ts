@@ -1,4 +1,4 @@
-import { registerPlugin } from '@capacitor/core'
+import { registerPlugin, type PluginListenerHandle } from '@capacitor/core'
 
 export interface TimeTrackingPlugin {
   startTimeTracking(options: {
@@ -64,10 +64,15 @@ export interface DeliveryNotesPlugin {
       width?: number
       height?: number
     }
+    /** Set to false and load signatureWebPath with fetch() to skip the base64 copy */
+    returnBase64?: boolean
   }): Promise<{
     success: boolean
     deliveryNoteId: string
-    signatureBase64: string
+    signaturePath: string
+    signatureWebPath: string
+    signatureBytes: number
+    signatureBase64?: string
     signedAt: number
     message: string
   }>
@@ -77,6 +82,8 @@ export interface DeliveryNotesPlugin {
       deliveryNoteId: string
       signerName: string
       signedAt: number
+      signaturePath?: string
+      signatureWebPath?: string
     }>
   }>
   
@@ -91,12 +98,86 @@ export interface DeliveryNotesPlugin {
     }>
     width?: number
     height?: number
+    output?: 'base64' | 'file'
   }): Promise<{
     success: boolean
-    base64: string
+    base64?: string
+    path?: string
+    webPath?: string
+    bytes?: number
   }>
 }
 
+export interface OfflineQueueAction {
+  id: string
+  actionType: string
+  actionData: any
+  timestamp: number
+  status: 'pending' | 'inFlight' | 'synced' | 'dead'
+  attempts: number
+  leaseOwner?: string
+  leaseExpiresAt?: number
+  lastError?: string
+}
+
+export interface OfflineAttachment {
+  id: string
+  ownerType: string
+  ownerId: string
+  state: 'processing' | 'ready' | 'uploading' | 'uploaded' | 'failed'
+  createdAt: number
+  attempts: number
+  path?: string
+  webPath?: string
+  mimeType?: string
+  bytes?: number
+  width?: number
+  height?: number
+  uploadedBytes?: number
+  lastError?: string
+}
+
+export type TimeEntryMergeRule = 'latest' | 'local' | 'server' | 'manual'
+
+export interface TimeEntryServerRow {
+  id: string
+  revision: string
+  modifiedAt: number
+  data: Record<string, any>
+}
+
+export interface TimeEntryConflict {
+  entryId: string
+  serverId: string
+  revision?: string
+  reason: 'fields' | 'deletedOnServer'
+  fields?: Record<string, { base: any; local: any; server: any }>
+}
+
+export interface PluginMetricsSnapshot {
+  startedAt: number
+  capturedAt: number
+  histograms: Record<string, {
+    unit: string
+    count: number
+    sum: number
+    mean: number
+    max: number
+    p50: number
+    p90: number
+    p99: number
+  }>
+  counters: Record<string, number>
+  gauges: Record<string, { value: number; unit: string }>
+  device: {
+    manufacturer: string
+    model: string
+    sdkInt: number
+    availableProcessors: number
+    maxMemory: number
+  }
+}
+
 export interface OfflineSyncPlugin {
   addOfflineAction(options: {
     actionType: string
@@ -117,6 +198,58 @@ export interface OfflineSyncPlugin {
     count: number
   }>
   
+  claimPendingActions(options?: {
+    owner?: string
+    limit?: number
+    leaseMs?: number
+  }): Promise<{
+    actions: Array<OfflineQueueAction>
+    count: number
+    leaseExpiresAt: number
+  }>
+  
+  completeActions(options: {
+    owner?: string
+    results: Array<{
+      actionId: string
+      success: boolean
+      retryable?: boolean
+      error?: string
+    }>
+  }): Promise<{
+    results: Array<{
+      actionId: string
+      outcome: 'synced' | 'retry' | 'dead' | 'stale' | 'unknown'
+    }>
+    queueLength: number
+    deadLetterCount: number
+  }>
+  
+  getDeadLetterActions(): Promise<{
+    deadLetterActions: Array<OfflineQueueAction>
+    count: number
+  }>
+  
+  retryDeadLetterAction(options: {
+    actionId: string
+  }): Promise<{
+    success: boolean
+  }>
+  
+  discardDeadLetterAction(options: {
+    actionId: string
+  }): Promise<{
+    success: boolean
+  }>
+  
+  // Only the owner that claimed the action can release it
+  releaseAction(options: {
+    owner?: string
+    actionId: string
+  }): Promise<{
+    success: boolean
+  }>
+  
   markActionSynced(options: {
     actionId: string
   }): Promise<{
@@ -135,12 +268,18 @@ export interface OfflineSyncPlugin {
   
   saveOfflineTimeEntry(options: {
     timeEntry: {
-      projectId: string
-      startTime: number
+      projectId?: string
+      startTime?: number
       endTime?: number
       description?: string
       location?: { lat: number; lng: number }
     }
+    // Updates an existing offline entry instead of adding one
+    entryId?: string
+    // Offline edit of a server row: its id, updated_at and field values when the edit started
+    serverId?: string
+    baseRevision?: string
+    base?: Record<string, any>
   }): Promise<{
     success: boolean
     entryId: string
@@ -151,9 +290,144 @@ export interface OfflineSyncPlugin {
     count: number
   }>
   
+  // serverEntries: current server rows for the pending entries' serverIds, mapped to the local field names.
+  // A row missing from the list counts as deleted; the list is required while edits of server rows are pending.
+  mergeTimeEntries(options: {
+    serverEntries?: Array<TimeEntryServerRow>
+    defaultRule?: TimeEntryMergeRule
+    rules?: Record<string, TimeEntryMergeRule>
+  }): Promise<{
+    uploads: Array<{
+      entryId: string
+      operation: 'create' | 'update'
+      serverId?: string
+      // Make the write conditional on this updated_at
+      expectedRevision?: string
+      // Pass back to markTimeEntrySynced once the server stored it
+      data: Record<string, any>
+    }>
+    conflicts: Array<TimeEntryConflict>
+    unchanged: number
+  }>
+  
+  markTimeEntrySynced(options: {
+    entryId: string
+    serverId: string
+    revision: string
+    // The upload's data; an entry edited since then stays pending
+    data: Record<string, any>
+  }): Promise<{
+    success: boolean
+    synced: boolean
+  }>
+  
+  resolveTimeEntryConflict(options: {
+    entryId: string
+    action?: 'merge' | 'recreate' | 'discard'
+    values?: Record<string, any>
+  }): Promise<{
+    success: boolean
+  }>
+  
   getQueueLength(): Promise<{
     length: number
+    deadLetterCount: number
+  }>
+  
+  // Replaces getActiveTimeTracking + getQueueLength + getNetworkStatus on startup
+  getBootState(): Promise<{
+    timeTracking: Awaited<ReturnType<TimeTrackingPlugin['getActiveTimeTracking']>>
+    queue: {
+      length: number
+      deadLetterCount: number
+      pendingAttachments: number
+    }
+    network: {
+      connected: boolean
+      connectionType: 'wifi' | 'cellular' | 'other' | 'none'
+      capturedAt: number
+    }
+  }>
+  
+  exportPendingActions(options?: {
+    unsyncedOnly?: boolean
+  }): Promise<{
+    path: string
+    webPath: string
+    bytes: number
+    count: number
+  }>
+  
+  releaseBlob(options: {
+    path: string
+  }): Promise<{
+    success: boolean
+  }>
+  
+  getMetrics(options?: {
+    reset?: boolean
+  }): Promise<PluginMetricsSnapshot>
+  
+  dumpMetrics(): Promise<{
+    success: boolean
+    path: string
+  }>
+  
+  queueAttachment(options: {
+    sourcePath: string
+    ownerType: string
+    ownerId: string
+    maxDimension?: number
+    quality?: number
+  }): Promise<{
+    success: boolean
+    attachmentId: string
+    state: OfflineAttachment['state']
+  }>
+  
+  getAttachments(options?: {
+    state?: OfflineAttachment['state']
+  }): Promise<{
+    attachments: Array<OfflineAttachment>
+    count: number
+    pendingCount: number
+  }>
+  
+  uploadAttachments(options: {
+    endpoint: string
+    headers?: Record<string, string>
+    metadata?: Record<string, string>
+    chunkSize?: number
+  }): Promise<{
+    results: Array<{
+      attachmentId: string
+      outcome: 'uploaded' | 'retry' | 'failed' | 'skipped'
+      error?: string
+    }>
+    pendingCount: number
+  }>
+  
+  retryAttachment(options: {
+    attachmentId: string
+  }): Promise<{
+    success: boolean
+  }>
+  
+  removeAttachment(options: {
+    attachmentId: string
+  }): Promise<{
+    success: boolean
   }>
+  
+  clearUploadedAttachments(): Promise<{
+    success: boolean
+    removed: number
+  }>
+  
+  addListener(
+    eventName: 'attachmentUploadProgress',
+    listener: (progress: { attachmentId: string; uploadedBytes: number; bytes: number }) => void
+  ): Promise<PluginListenerHandle>
 }
 
 // Register plugins
@@ -227,12 +501,14 @@ export class AndroidDeliveryNotesService {
     }
   }
   
-  async signNote(deliveryNoteId: string, signerName: string, signatureData: any) {
+  /** Skips the base64 copy unless asked for; load the PNG from signatureWebPath with fetch() */
+  async signNote(deliveryNoteId: string, signerName: string, signatureData: any, options?: { returnBase64?: boolean }) {
     try {
       const result = await DeliveryNotes.signDeliveryNote({
         deliveryNoteId,
         signerName,
-        signatureData
+        signatureData,
+        returnBase64: options?.returnBase64 ?? false
       })
       return result
     } catch (error) {
@@ -292,6 +568,46 @@ export class AndroidOfflineSyncService {
     }
   }
   
+  async claimPendingActions(owner: string, limit?: number, leaseMs?: number) {
+    try {
+      const result = await OfflineSync.claimPendingActions({ owner, limit, leaseMs })
+      return result.actions
+    } catch (error) {
+      console.error('Android claim pending actions failed:', error)
+      throw error
+    }
+  }
+  
+  async completeActions(owner: string, results: Array<{ actionId: string; success: boolean; retryable?: boolean; error?: string }>) {
+    try {
+      const result = await OfflineSync.completeActions({ owner, results })
+      return result.results
+    } catch (error) {
+      console.error('Android complete actions failed:', error)
+      throw error
+    }
+  }
+  
+  async getDeadLetterActions() {
+    try {
+      const result = await OfflineSync.getDeadLetterActions()
+      return result.deadLetterActions
+    } catch (error) {
+      console.error('Android get dead letter actions failed:', error)
+      throw error
+    }
+  }
+  
+  async releaseAction(owner: string, actionId: string) {
+    try {
+      const result = await OfflineSync.releaseAction({ owner, actionId })
+      return result.success
+    } catch (error) {
+      console.error('Android release action failed:', error)
+      throw error
+    }
+  }
+  
   async markActionSynced(actionId: string) {
     try {
       await OfflineSync.markActionSynced({ actionId })
@@ -311,6 +627,39 @@ export class AndroidOfflineSyncService {
     }
   }
   
+  async getBootState() {
+    try {
+      return await OfflineSync.getBootState()
+    } catch (error) {
+      console.error('Android get boot state failed:', error)
+      throw error
+    }
+  }
+  
+  async exportPendingActions(unsyncedOnly = true) {
+    try {
+      const result = await OfflineSync.exportPendingActions({ unsyncedOnly })
+      try {
+        const response = await fetch(result.webPath)
+        return await response.json()
+      } finally {
+        await OfflineSync.releaseBlob({ path: result.path })
+      }
+    } catch (error) {
+      console.error('Android export pending actions failed:', error)
+      throw error
+    }
+  }
+  
+  async getMetrics(reset?: boolean) {
+    try {
+      return await OfflineSync.getMetrics({ reset })
+    } catch (error) {
+      console.error('Android get metrics failed:', error)
+      throw error
+    }
+  }
+  
   async saveOfflineTimeEntry(timeEntry: any) {
     try {
       const result = await OfflineSync.saveOfflineTimeEntry({ timeEntry })
@@ -320,6 +669,62 @@ export class AndroidOfflineSyncService {
       throw error
     }
   }
+  
+  async mergeTimeEntries(serverEntries: Array<TimeEntryServerRow>, rules?: Record<string, TimeEntryMergeRule>, defaultRule?: TimeEntryMergeRule) {
+    try {
+      return await OfflineSync.mergeTimeEntries({ serverEntries, rules, defaultRule })
+    } catch (error) {
+      console.error('Android merge time entries failed:', error)
+      throw error
+    }
+  }
+  
+  async markTimeEntrySynced(entryId: string, serverId: string, revision: string, data: Record<string, any>) {
+    try {
+      return await OfflineSync.markTimeEntrySynced({ entryId, serverId, revision, data })
+    } catch (error) {
+      console.error('Android mark time entry synced failed:', error)
+      throw error
+    }
+  }
+  
+  async resolveTimeEntryConflict(entryId: string, action: 'merge' | 'recreate' | 'discard', values?: Record<string, any>) {
+    try {
+      await OfflineSync.resolveTimeEntryConflict({ entryId, action, values })
+    } catch (error) {
+      console.error('Android resolve time entry conflict failed:', error)
+      throw error
+    }
+  }
+  
+  async queueAttachment(sourcePath: string, ownerType: string, ownerId: string, options?: { maxDimension?: number; quality?: number }) {
+    try {
+      return await OfflineSync.queueAttachment({ sourcePath, ownerType, ownerId, ...options })
+    } catch (error) {
+      console.error('Android queue attachment failed:', error)
+      throw error
+    }
+  }
+  
+  async getAttachments(state?: OfflineAttachment['state']) {
+    try {
+      const result = await OfflineSync.getAttachments({ state })
+      return result.attachments
+    } catch (error) {
+      console.error('Android get attachments failed:', error)
+      throw error
+    }
+  }
+  
+  // Call again when connectivity returns; partially sent files resume at the server's offset
+  async uploadAttachments(endpoint: string, headers?: Record<string, string>, metadata?: Record<string, string>) {
+    try {
+      return await OfflineSync.uploadAttachments({ endpoint, headers, metadata })
+    } catch (error) {
+      console.error('Android upload attachments failed:', error)
+      throw error
+    }
+  }
 }
 
 // Platform detection helper
@@ -343,7 +748,8 @@ export const useAndroidTimeTracking = () => {
     getActiveSession: timeTrackingService.getActiveSession.bind(timeTrackingService),
     addOfflineAction: offlineSyncService.addOfflineAction.bind(offlineSyncService),
     getNetworkStatus: offlineSyncService.getNetworkStatus.bind(offlineSyncService),
-    getQueueLength: offlineSyncService.getQueueLength.bind(offlineSyncService)
+    getQueueLength: offlineSyncService.getQueueLength.bind(offlineSyncService),
+    getBootState: offlineSyncService.getBootState.bind(offlineSyncService)
   }
 }
 